@@ -192,6 +192,40 @@ export default class Video extends Component {
     }
   };
 
+  _onDrmTimings = (event) => {
+    if (this.props.onDrmTimings) {
+      this.props.onDrmTimings(event.nativeEvent);
+    }
+  };
+
+  _onManifestParsed = (event) => {
+    if (this.props.onManifestParsed) {
+      this.props.onManifestParsed(event.nativeEvent);
+    }
+  };
+
+  _onTransferLog = (event) => {
+    if (this.props.onTransferLog) {
+      this.props.onTransferLog(event.nativeEvent);
+    }
+  };
+
+  _onStartupTrace = (event) => {
+    if (this.props.onStartupTrace) {
+      this.props.onStartupTrace(event.nativeEvent);
+    }
+  };
+
+  _onDecoderGrantChanged = (event) => {
+    if (!this.props.audioOnly && this.state.showPoster === event.nativeEvent.granted) {
+      this.setState({showPoster: !event.nativeEvent.granted});
+    }
+
+    if (this.props.onDecoderGrantChanged) {
+      this.props.onDecoderGrantChanged(event.nativeEvent);
+    }
+  };
+
   render() {
     const resizeMode = this.props.resizeMode;
     const source = resolveAssetSource(this.props.source) || {};
@@ -259,6 +293,11 @@ export default class Video extends Component {
       onPlaybackRateChange: this._onPlaybackRateChange,
       onAudioFocusChanged: this._onAudioFocusChanged,
       onAudioBecomingNoisy: this._onAudioBecomingNoisy,
+      onDrmTimings: this._onDrmTimings,
+      onManifestParsed: this._onManifestParsed,
+      onTransferLog: this._onTransferLog,
+      onStartupTrace: this._onStartupTrace,
+      onDecoderGrantChanged: this._onDecoderGrantChanged,
     });
 
     if (this.props.poster && this.state.showPoster) {
@@ -367,6 +406,33 @@ Video.propTypes = {
   stereoPan: PropTypes.number,
   rate: PropTypes.number,
   drmType: PropTypes.string,
+  drmTransport: PropTypes.oneOf(['default', 'okhttp']),
+  drmRenewalLeadTimeMs: PropTypes.number,
+  segmentCache: PropTypes.shape({
+    maxBytes: PropTypes.number,
+    ignoredQueryParameters: PropTypes.arrayOf(PropTypes.string),
+  }),
+  transferLogUpdateInterval: PropTypes.number,
+  liveTargetLatency: PropTypes.number,
+  cdnBaseUrls: PropTypes.arrayOf(PropTypes.string),
+  segmentPrefetch: PropTypes.shape({
+    count: PropTypes.number,
+    maxBytes: PropTypes.number,
+  }),
+  preloadSrc: PropTypes.string,
+  preloadConfig: PropTypes.shape({
+    maxBufferMs: PropTypes.number,
+    maxBytes: PropTypes.number,
+    maxAgeMs: PropTypes.number,
+  }),
+  playerKey: PropTypes.string,
+  playerKeepAlive: PropTypes.shape({
+    gracePeriodMs: PropTypes.number,
+    maxIdlePlayers: PropTypes.number,
+  }),
+  decoderBudget: PropTypes.shape({
+    maxActiveDecoders: PropTypes.number,
+  }),
   licenseUrl: PropTypes.string,
   deviceId: PropTypes.string,
   customerId: PropTypes.string,
@@ -397,6 +463,11 @@ Video.propTypes = {
   onPlaybackRateChange: PropTypes.func,
   onAudioFocusChanged: PropTypes.func,
   onAudioBecomingNoisy: PropTypes.func,
+  onDrmTimings: PropTypes.func,
+  onManifestParsed: PropTypes.func,
+  onTransferLog: PropTypes.func,
+  onStartupTrace: PropTypes.func,
+  onDecoderGrantChanged: PropTypes.func,
 
   /* Required by react-native */
   scaleX: PropTypes.number,
@@ -0,0 +1,99 @@
+package com.brentvatne.exoplayer;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * {@link DefaultLoadControl} whose buffer durations and size can be changed while the player is in use, so
+ * a new buffer config does not require rebuilding the player.
+ */
+final class ConfigurableLoadControl extends DefaultLoadControl {
+
+    private final DefaultAllocator allocator;
+    private volatile int targetBufferBytes;
+    private volatile boolean prioritizeTimeOverSizeThresholds;
+    private volatile long minBufferUs;
+    private volatile long maxBufferUs;
+    private volatile long bufferForPlaybackUs;
+    private volatile long bufferForPlaybackAfterRebufferUs;
+
+    /* Accessed on the playback thread only. */
+    private boolean isBuffering;
+
+    ConfigurableLoadControl(DefaultAllocator allocator, int minBufferMs, int maxBufferMs,
+                            int bufferForPlaybackMs, int bufferForPlaybackAfterRebufferMs,
+                            int targetBufferBytes, boolean prioritizeTimeOverSizeThresholds) {
+        super(allocator, minBufferMs, maxBufferMs, bufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs, targetBufferBytes, prioritizeTimeOverSizeThresholds);
+        this.allocator = allocator;
+        setTargetBuffer(targetBufferBytes, prioritizeTimeOverSizeThresholds);
+        setBufferDurationsMs(minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs);
+    }
+
+    /**
+     * Applies new buffer durations from the next load decision on.
+     */
+    void setBufferDurationsMs(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                              int bufferForPlaybackAfterRebufferMs) {
+        this.minBufferUs = minBufferMs * 1000L;
+        this.maxBufferUs = maxBufferMs * 1000L;
+        this.bufferForPlaybackUs = bufferForPlaybackMs * 1000L;
+        this.bufferForPlaybackAfterRebufferUs = bufferForPlaybackAfterRebufferMs * 1000L;
+    }
+
+    /**
+     * Applies a new size budget from the next load decision on.
+     */
+    void setTargetBuffer(int targetBufferBytes, boolean prioritizeTimeOverSizeThresholds) {
+        this.targetBufferBytes = targetBufferBytes;
+        this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+    }
+
+    @Override
+    public void onPrepared() {
+        isBuffering = false;
+        super.onPrepared();
+    }
+
+    @Override
+    public void onStopped() {
+        isBuffering = false;
+        super.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        isBuffering = false;
+        super.onReleased();
+    }
+
+    // Same decisions as DefaultLoadControl, reading the current durations.
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+        boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+        long maxBufferUs = this.maxBufferUs;
+        long minBufferUs = this.minBufferUs;
+        if (playbackSpeed > 1) {
+            minBufferUs = Math.min(Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed),
+                    maxBufferUs);
+        }
+        if (bufferedDurationUs < minBufferUs) {
+            isBuffering = prioritizeTimeOverSizeThresholds || !targetBufferSizeReached;
+        } else if (bufferedDurationUs > maxBufferUs || targetBufferSizeReached) {
+            isBuffering = false;
+        }
+        return isBuffering;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+        bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+        long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+        return minBufferDurationUs <= 0
+                || bufferedDurationUs >= minBufferDurationUs
+                || (!prioritizeTimeOverSizeThresholds
+                && allocator.getTotalBytesAllocated() >= targetBufferBytes);
+    }
+}
@@ -0,0 +1,88 @@
+package com.brentvatne.exoplayer;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to hosts ahead of the first request to them. A HEAD request per host resolves
+ * it, connects and completes the TLS handshake; the connection then stays in the client's pool
+ * for the keep-alive duration, where the players' requests pick it up.
+ */
+final class ConnectionPrewarmer {
+
+    private static final String TAG = "ConnectionPrewarmer";
+
+    interface Listener {
+
+        /**
+         * Called once per url on an OkHttp dispatcher thread.
+         *
+         * @param timeMs Time taken, including DNS, connect and TLS when not already pooled.
+         */
+        void onPrewarmed(String url, boolean success, long timeMs);
+
+        /**
+         * Called after all urls have been handled.
+         */
+        void onCompleted();
+    }
+
+    private ConnectionPrewarmer() {
+    }
+
+    static void prewarm(OkHttpClient client, List<String> urls, final Listener listener) {
+        final AtomicInteger remaining = new AtomicInteger(urls.size());
+        if (urls.isEmpty()) {
+            listener.onCompleted();
+            return;
+        }
+        for (final String url : urls) {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (httpUrl == null) {
+                Log.w(TAG, "Not an http(s) url: " + url);
+                listener.onPrewarmed(url, false, 0);
+                if (remaining.decrementAndGet() == 0) {
+                    listener.onCompleted();
+                }
+                continue;
+            }
+            final long startMs = SystemClock.elapsedRealtime();
+            Request request = new Request.Builder()
+                    .url(httpUrl.newBuilder().encodedPath("/").query(null).build())
+                    .head()
+                    .build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.w(TAG, "Unable to prewarm " + url, e);
+                    complete(false);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    // Any status will do, the connection is what matters.
+                    response.close();
+                    complete(true);
+                }
+
+                private void complete(boolean success) {
+                    listener.onPrewarmed(url, success, SystemClock.elapsedRealtime() - startMs);
+                    if (remaining.decrementAndGet() == 0) {
+                        listener.onCompleted();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -2,7 +2,11 @@ package com.brentvatne.exoplayer;
 
 import android.content.Context;
 import android.content.ContextWrapper;
+import androidx.annotation.Nullable;
 
+import com.brentvatne.exoplayer.drm.DrmTimings;
+import com.brentvatne.exoplayer.manifest.ConditionalGetInterceptor;
+import com.brentvatne.exoplayer.telemetry.TransferLog;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.modules.network.CookieJarContainer;
 import com.facebook.react.modules.network.ForwardingCookieHandler;
@@ -12,12 +16,23 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Util;
 
+import okhttp3.ConnectionPool;
 import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
 import okhttp3.JavaNetCookieJar;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.net.CookieHandler;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 
 public class DataSourceUtil {
@@ -25,8 +40,40 @@ public class DataSourceUtil {
     private DataSourceUtil() {
     }
 
+    public static final String DRM_TRANSPORT_DEFAULT = "default";
+    public static final String DRM_TRANSPORT_OKHTTP = "okhttp";
+
+    private static final String DRM_USER_AGENT = "sctv";
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 8;
+    static final long DEFAULT_KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    /* Cookies go through the default CookieHandler, as with HttpURLConnection. It is looked up on
+     * every request since the player installs its cookie manager after the client is built. */
+    private static final CookieJar DEFAULT_COOKIE_HANDLER_JAR = new CookieJar() {
+        @Override
+        public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            CookieHandler cookieHandler = CookieHandler.getDefault();
+            if (cookieHandler != null) {
+                new JavaNetCookieJar(cookieHandler).saveFromResponse(url, cookies);
+            }
+        }
+
+        @Override
+        public List<Cookie> loadForRequest(HttpUrl url) {
+            CookieHandler cookieHandler = CookieHandler.getDefault();
+            return cookieHandler != null
+                    ? new JavaNetCookieJar(cookieHandler).loadForRequest(url)
+                    : Collections.<Cookie>emptyList();
+        }
+    };
+
+    private static final ConditionalGetInterceptor MANIFEST_CONDITIONAL_GET_INTERCEPTOR = new ConditionalGetInterceptor();
+
     private static DataSource.Factory rawDataSourceFactory = null;
     private static DataSource.Factory defaultDataSourceFactory = null;
+    private static OkHttpClient okHttpClient = null;
+    private static int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+    private static long keepAliveDurationMs = DEFAULT_KEEP_ALIVE_DURATION_MS;
     private static String userAgent = null;
 
     public static void setUserAgent(String userAgent) {
@@ -63,6 +110,108 @@ public class DataSourceUtil {
         DataSourceUtil.defaultDataSourceFactory = factory;
     }
 
+    /**
+     * Returns the OkHttp client shared by all players. It keeps connections alive in a single pool
+     * and negotiates HTTP/2 where the server supports it.
+     */
+    public static synchronized OkHttpClient getOkHttpClient() {
+        if (okHttpClient == null) {
+            okHttpClient = buildOkHttpClient();
+        }
+        return okHttpClient;
+    }
+
+    public static synchronized void setOkHttpClient(OkHttpClient client) {
+        DataSourceUtil.okHttpClient = client;
+    }
+
+    /**
+     * Returns the data source factory used for license and provisioning requests.
+     *
+     * @param transport {@link #DRM_TRANSPORT_OKHTTP} to use the shared OkHttp client,
+     *     anything else for a {@link DrmHttpDataSource} on HttpURLConnection.
+     */
+    public static HttpDataSource.Factory getDrmHttpDataSourceFactory(String transport) {
+        if (DRM_TRANSPORT_OKHTTP.equals(transport)) {
+            return new OkHttpDataSourceFactory(getOkHttpClient(), DRM_USER_AGENT, null);
+        }
+        return new DrmHttpDataSourceFactory(DRM_USER_AGENT, null);
+    }
+
+    /**
+     * Sizes the connection pool of the shared OkHttp client. Data sources created afterwards use
+     * a client with the new pool, connections of the previous pool are evicted.
+     */
+    public static synchronized void configureConnectionPool(int maxIdleConnections, long keepAliveDurationMs) {
+        DataSourceUtil.maxIdleConnections = maxIdleConnections;
+        DataSourceUtil.keepAliveDurationMs = keepAliveDurationMs;
+        if (okHttpClient != null) {
+            okHttpClient.connectionPool().evictAll();
+            okHttpClient = buildOkHttpClient();
+        }
+    }
+
+    /**
+     * Returns a data source factory for manifests and media segments, on top of the shared OkHttp
+     * client, so all players share its connection pool and HTTP/2 connections.
+     */
+    public static DataSource.Factory getMediaDataSourceFactory(Context context, String userAgent,
+                                                               TransferListener<? super DataSource> listener,
+                                                               int connectTimeoutMillis, int readTimeoutMillis) {
+        return getMediaDataSourceFactory(context, userAgent, listener, connectTimeoutMillis,
+                readTimeoutMillis, null);
+    }
+
+    /**
+     * Like {@link #getMediaDataSourceFactory(Context, String, TransferListener, int, int)}, also
+     * recording the HTTP requests in {@code transferLog} if not null.
+     */
+    public static DataSource.Factory getMediaDataSourceFactory(Context context, String userAgent,
+                                                               TransferListener<? super DataSource> listener,
+                                                               int connectTimeoutMillis, int readTimeoutMillis,
+                                                               @Nullable TransferLog transferLog) {
+        OkHttpClient.Builder clientBuilder = buildMediaOkHttpClient(connectTimeoutMillis, readTimeoutMillis);
+        if (transferLog != null) {
+            clientBuilder.addInterceptor(TransferLog.RESPONSE_CODE_INTERCEPTOR);
+        }
+        HttpDataSource.Factory httpDataSourceFactory = new OkHttpDataSourceFactory(clientBuilder.build(),
+                userAgent, listener);
+        return new DefaultDataSourceFactory(context, listener, transferLog != null
+                ? transferLog.wrap(httpDataSourceFactory) : httpDataSourceFactory);
+    }
+
+    /**
+     * Like {@link #getMediaDataSourceFactory}, but revalidates repeated loads of the same manifest
+     * with conditional GETs, see {@link ConditionalGetInterceptor}.
+     */
+    public static DataSource.Factory getManifestDataSourceFactory(Context context, String userAgent,
+                                                                  TransferListener<? super DataSource> listener,
+                                                                  int connectTimeoutMillis, int readTimeoutMillis) {
+        OkHttpClient client = buildMediaOkHttpClient(connectTimeoutMillis, readTimeoutMillis)
+                .addInterceptor(MANIFEST_CONDITIONAL_GET_INTERCEPTOR)
+                .build();
+        return new DefaultDataSourceFactory(context, listener,
+                new OkHttpDataSourceFactory(client, userAgent, listener));
+    }
+
+    private static OkHttpClient.Builder buildMediaOkHttpClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        return getOkHttpClient().newBuilder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .followSslRedirects(false);
+    }
+
+    private static OkHttpClient buildOkHttpClient() {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDurationMs, TimeUnit.MILLISECONDS))
+                .cookieJar(DEFAULT_COOKIE_HANDLER_JAR)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(DrmHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(DrmHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .eventListenerFactory(DrmTimings.EVENT_LISTENER_FACTORY)
+                .build();
+    }
+
     private static DataSource.Factory buildRawDataSourceFactory(ReactContext context) {
         return new RawResourceDataSourceFactory(context.getApplicationContext());
     }
@@ -0,0 +1,154 @@
+package com.brentvatne.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Caps the number of players holding a video decoder across all views that opted in, giving the
+ * decoders to the most visible ones. Members losing theirs pause and disable their video renderer,
+ * which releases the codec but keeps the player, its source and DRM session; getting a decoder
+ * back only re-creates the codec.
+ * <p>
+ * The codec is released on the playback thread after the renderer is disabled, so a revoked
+ * member counts against the cap until it reports its renderer disabled; only then is its decoder
+ * handed to another member.
+ * <p>
+ * Accessed on the main thread only.
+ */
+final class DecoderBudget {
+
+    static final int DEFAULT_MAX_ACTIVE_DECODERS = 4;
+
+    interface Member {
+
+        /**
+         * Fraction of the member visible on screen, 0 when off-screen.
+         */
+        float getVisibleFraction();
+
+        /**
+         * Called when the member gets or loses its decoder.
+         */
+        void onDecoderGranted(boolean granted);
+
+        /**
+         * Whether the player of the member may hold a codec, from its video renderer being enabled
+         * until it reports it disabled. Members call {@link #invalidate()} when this turns false.
+         */
+        boolean holdsDecoder();
+    }
+
+    private static DecoderBudget instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Member> members = new ArrayList<>();
+    private final List<Member> granted = new ArrayList<>();
+    private int maxActiveDecoders = DEFAULT_MAX_ACTIVE_DECODERS;
+    private boolean rebalancePending;
+
+    private final Runnable rebalance = new Runnable() {
+        @Override
+        public void run() {
+            rebalancePending = false;
+            rebalance();
+        }
+    };
+
+    private static final Comparator<Member> MOST_VISIBLE_FIRST = new Comparator<Member>() {
+        @Override
+        public int compare(Member a, Member b) {
+            return Float.compare(b.getVisibleFraction(), a.getVisibleFraction());
+        }
+    };
+
+    static DecoderBudget getInstance() {
+        if (instance == null) {
+            instance = new DecoderBudget();
+        }
+        return instance;
+    }
+
+    private DecoderBudget() {
+    }
+
+    void setMaxActiveDecoders(int maxActiveDecoders) {
+        if (this.maxActiveDecoders != maxActiveDecoders) {
+            this.maxActiveDecoders = maxActiveDecoders;
+            invalidate();
+        }
+    }
+
+    void add(Member member) {
+        if (!members.contains(member)) {
+            members.add(member);
+            invalidate();
+        }
+    }
+
+    /**
+     * Removes {@code member}, its decoder goes to the next most visible member. Its codec is no
+     * longer counted, remove members once their player is released or owned by another member.
+     */
+    void remove(Member member) {
+        if (members.remove(member)) {
+            granted.remove(member);
+            invalidate();
+        }
+    }
+
+    /**
+     * Schedules a reassignment of the decoders, call when the visibility of a member changed.
+     * Changes within a frame are coalesced.
+     */
+    void invalidate() {
+        if (!rebalancePending) {
+            rebalancePending = true;
+            handler.post(rebalance);
+        }
+    }
+
+    private void rebalance() {
+        List<Member> ranked = new ArrayList<>(members);
+        Collections.sort(ranked, MOST_VISIBLE_FIRST);
+        List<Member> winners = new ArrayList<>();
+        for (Member member : ranked) {
+            if (winners.size() == maxActiveDecoders || member.getVisibleFraction() <= 0) {
+                break;
+            }
+            winners.add(member);
+        }
+        // Release decoders before handing them out.
+        for (int i = granted.size() - 1; i >= 0; i--) {
+            Member member = granted.get(i);
+            if (!winners.contains(member)) {
+                granted.remove(i);
+                member.onDecoderGranted(false);
+            }
+        }
+        int usedDecoders = granted.size();
+        for (Member member : members) {
+            if (!granted.contains(member) && member.holdsDecoder()) {
+                usedDecoders++;
+            }
+        }
+        for (Member member : winners) {
+            if (granted.contains(member)) {
+                continue;
+            }
+            if (!member.holdsDecoder()) {
+                if (usedDecoders >= maxActiveDecoders) {
+                    // Granted once a revoked member reports its codec released.
+                    continue;
+                }
+                usedDecoders++;
+            }
+            granted.add(member);
+            member.onDecoderGranted(true);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.brentvatne.exoplayer;
+
+import android.net.Uri;
+
+import com.brentvatne.exoplayer.bitrate.SharedBandwidthMeter;
+import com.brentvatne.exoplayer.cache.SegmentCache;
+import com.brentvatne.exoplayer.cache.SegmentPrefetcher;
+import com.brentvatne.exoplayer.drm.DrmSessionManagerPool;
+import com.brentvatne.exoplayer.drm.DrmTimings;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+/**
+ * A prepared player not owned by any view, with what it was built with. Releasing it releases all
+ * of them; a view adopting it takes them over instead.
+ * <p>
+ * Detached players of views in the {@link DecoderBudget} are members of it until adopted or
+ * released: a preload ranks after every visible view, so it only decodes with a decoder to spare,
+ * a parked player never gets one and only counts until its codec is released.
+ */
+final class DetachedPlayer implements DecoderBudget.Member {
+
+    /* Positive, the budget never grants members at 0, and below the views that are visible. */
+    static final float PRELOAD_VISIBLE_FRACTION = 0.01f;
+
+    final Uri uri;
+    SimpleExoPlayer player;
+    DefaultTrackSelector trackSelector;
+    ConfigurableLoadControl loadControl;
+    DrmSessionManagerPool.Lease drmLease;
+    DrmTimings drmTimings;
+    SegmentCache.Lease segmentCacheLease;
+    SegmentPrefetcher segmentPrefetcher;
+    PlayerEventRelay eventRelay;
+    DefaultBandwidthMeter bandwidthMeter;
+    SharedBandwidthMeter.Participant sharedBandwidthMeter;
+    /* PRELOAD_VISIBLE_FRACTION for preloads, 0 for parked players. */
+    float visibleFraction;
+
+    DetachedPlayer(Uri uri) {
+        this.uri = uri;
+    }
+
+    // DecoderBudget.Member implementation
+
+    @Override
+    public float getVisibleFraction() {
+        return visibleFraction;
+    }
+
+    @Override
+    public void onDecoderGranted(boolean granted) {
+        if (player == null) {
+            return;
+        }
+        for (int i = 0; i < player.getRendererCount(); i++) {
+            if (player.getRendererType(i) == C.TRACK_TYPE_VIDEO) {
+                trackSelector.setRendererDisabled(i, !granted);
+            }
+        }
+    }
+
+    @Override
+    public boolean holdsDecoder() {
+        return eventRelay != null && eventRelay.isVideoDecoderEnabled();
+    }
+
+    void release() {
+        DecoderBudget.getInstance().remove(this);
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+        if (drmLease != null) {
+            drmLease.release();
+            drmLease = null;
+        }
+        if (segmentCacheLease != null) {
+            segmentCacheLease.release();
+            segmentCacheLease = null;
+        }
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.release();
+            segmentPrefetcher = null;
+        }
+        if (sharedBandwidthMeter != null) {
+            sharedBandwidthMeter.setActive(false);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.brentvatne.exoplayer;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.media.MediaCodecInfo.VideoCapabilities;
+import android.os.Build;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.UnsupportedDrmException;
+import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder and DRM capabilities of the device, persisted across launches. The first launch (and the
+ * first after an OS or app update) probes them on a background thread, later launches read them
+ * from disk without touching MediaCodecList or MediaDrm.
+ */
+public final class DeviceCapabilities {
+
+    private static final String TAG = "DeviceCapabilities";
+
+    private static final String PREFERENCES_NAME = "RCTVideoDeviceCapabilities";
+    private static final String PREFERENCE_FINGERPRINT = "fingerprint";
+    private static final String PREFERENCE_CAPABILITIES = "capabilities";
+
+    private static final String[] PROBED_MIME_TYPES = {
+            MimeTypes.VIDEO_H264,
+            MimeTypes.VIDEO_H265,
+            MimeTypes.VIDEO_VP9,
+            MimeTypes.AUDIO_AAC,
+            MimeTypes.AUDIO_AC3,
+            MimeTypes.AUDIO_E_AC3,
+    };
+
+    /* Candidate maximum video sizes, largest first. */
+    private static final int[][] PROBED_VIDEO_SIZES = {
+            {3840, 2160},
+            {2560, 1440},
+            {1920, 1080},
+            {1280, 720},
+            {854, 480},
+    };
+
+    private static final String WIDEVINE_PROPERTY_SECURITY_LEVEL = "securityLevel";
+
+    private static DeviceCapabilities instance;
+    private static boolean probing;
+
+    /* Decoder names per mime type, only mime types with at least one decoder are present. */
+    Map<String, List<String>> decoders = new HashMap<>();
+    List<String> secureDecoderMimeTypes = new ArrayList<>();
+    /* Null if Widevine is not supported or its probe failed. */
+    String widevineSecurityLevel;
+    /* Only set when MediaDrm rejected the scheme. Other probe failures leave support unknown,
+     * which playback is not gated on and the next launch probes again. */
+    boolean widevineUnsupported;
+    /* Limits of the first decoder per video mime type, and of the first secure one, only mime
+     * types with known limits are present. */
+    Map<String, VideoLimits> videoLimits = new HashMap<>();
+    Map<String, VideoLimits> secureVideoLimits = new HashMap<>();
+
+    /**
+     * Largest probed size and maximum bitrate a video decoder supports.
+     */
+    public static final class VideoLimits {
+
+        public final int maxWidth;
+        public final int maxHeight;
+        public final int maxBitrate;
+
+        VideoLimits(int maxWidth, int maxHeight, int maxBitrate) {
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.maxBitrate = maxBitrate;
+        }
+    }
+
+    /**
+     * Returns the capabilities of this device, or null if they are not known yet. In that case
+     * they are probed in the background and available to later calls.
+     */
+    public static DeviceCapabilities get(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        synchronized (DeviceCapabilities.class) {
+            if (instance != null || probing) {
+                return instance;
+            }
+            instance = load(applicationContext);
+            if (instance != null) {
+                return instance;
+            }
+            probing = true;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DeviceCapabilities capabilities = probe();
+                save(applicationContext, capabilities);
+                synchronized (DeviceCapabilities.class) {
+                    instance = capabilities;
+                    probing = false;
+                }
+            }
+        }, TAG).start();
+        return null;
+    }
+
+    public boolean hasDecoder(String mimeType) {
+        return decoders.containsKey(mimeType);
+    }
+
+    public boolean hasSecureDecoder(String mimeType) {
+        return secureDecoderMimeTypes.contains(mimeType);
+    }
+
+    /**
+     * Returns false only if the device is known not to support Widevine, true if its probe failed.
+     */
+    public boolean isWidevineSupported() {
+        return !widevineUnsupported;
+    }
+
+    /**
+     * Returns the Widevine security level ("L1", "L3"), or null if Widevine is not supported or
+     * its probe failed.
+     */
+    public String getWidevineSecurityLevel() {
+        return widevineSecurityLevel;
+    }
+
+    /**
+     * Returns the limits of the decoder of {@code mimeType}, or null if they are not known.
+     *
+     * @param secure Whether the limits of the secure decoder, used for DRM protected content, are
+     *     returned.
+     */
+    public VideoLimits getVideoLimits(String mimeType, boolean secure) {
+        return (secure ? secureVideoLimits : videoLimits).get(mimeType);
+    }
+
+    /**
+     * Returns the largest size and bitrate supported by any of the video decoders, the bound of
+     * what the device can play in any codec, or null if no limits are known.
+     *
+     * @param secure Whether only the secure decoders are considered.
+     */
+    public VideoLimits getLargestVideoLimits(boolean secure) {
+        VideoLimits largest = null;
+        int maxBitrate = 0;
+        for (VideoLimits limits : (secure ? secureVideoLimits : videoLimits).values()) {
+            if (largest == null || limits.maxWidth * limits.maxHeight > largest.maxWidth * largest.maxHeight) {
+                largest = limits;
+            }
+            maxBitrate = Math.max(maxBitrate, limits.maxBitrate);
+        }
+        return largest != null ? new VideoLimits(largest.maxWidth, largest.maxHeight, maxBitrate) : null;
+    }
+
+    private static DeviceCapabilities load(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!fingerprint(context).equals(preferences.getString(PREFERENCE_FINGERPRINT, null))) {
+            return null;
+        }
+        try {
+            DeviceCapabilities capabilities = new Gson().fromJson(
+                    preferences.getString(PREFERENCE_CAPABILITIES, null), DeviceCapabilities.class);
+            if (capabilities == null || capabilities.videoLimits == null
+                    || capabilities.secureVideoLimits == null) {
+                // Stored in an older format, probe again.
+                return null;
+            }
+            if (capabilities.widevineSecurityLevel == null && !capabilities.widevineUnsupported) {
+                // The Widevine probe failed, or an older format stored a failure as unsupported.
+                return null;
+            }
+            return capabilities;
+        } catch (JsonParseException e) {
+            Log.w(TAG, "Discarding unreadable capabilities", e);
+            return null;
+        }
+    }
+
+    private static void save(Context context, DeviceCapabilities capabilities) {
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(PREFERENCE_FINGERPRINT, fingerprint(context))
+                .putString(PREFERENCE_CAPABILITIES, new Gson().toJson(capabilities))
+                .apply();
+    }
+
+    /**
+     * Identifies the OS build and app version the capabilities were probed on.
+     */
+    private static String fingerprint(Context context) {
+        String appVersion;
+        try {
+            PackageInfo packageInfo = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            appVersion = packageInfo.versionCode + "/" + packageInfo.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            appVersion = "unknown";
+        }
+        return Build.FINGERPRINT + "|" + appVersion;
+    }
+
+    private static DeviceCapabilities probe() {
+        DeviceCapabilities capabilities = new DeviceCapabilities();
+        for (String mimeType : PROBED_MIME_TYPES) {
+            try {
+                List<MediaCodecInfo> decoderInfos = MediaCodecUtil.getDecoderInfos(mimeType, false);
+                if (!decoderInfos.isEmpty()) {
+                    List<String> names = new ArrayList<>();
+                    for (MediaCodecInfo decoderInfo : decoderInfos) {
+                        names.add(decoderInfo.name);
+                    }
+                    capabilities.decoders.put(mimeType, names);
+                }
+                if (MediaCodecUtil.getDecoderInfo(mimeType, true) != null) {
+                    capabilities.secureDecoderMimeTypes.add(mimeType);
+                }
+            } catch (MediaCodecUtil.DecoderQueryException e) {
+                Log.w(TAG, "Unable to query decoders for " + mimeType, e);
+            }
+        }
+        if (Util.SDK_INT >= 21) {
+            for (String mimeType : PROBED_MIME_TYPES) {
+                if (MimeTypes.isVideo(mimeType)) {
+                    probeVideoLimits(capabilities.videoLimits, mimeType, false);
+                    probeVideoLimits(capabilities.secureVideoLimits, mimeType, true);
+                }
+            }
+        }
+        probeWidevine(capabilities);
+        Log.d(TAG, "Probed " + new Gson().toJson(capabilities));
+        return capabilities;
+    }
+
+    /**
+     * Adds the limits of the decoder ExoPlayer picks for {@code mimeType} to {@code limits}, if it
+     * supports one of the probed sizes.
+     */
+    @TargetApi(21)
+    private static void probeVideoLimits(Map<String, VideoLimits> limits, String mimeType,
+                                         boolean secure) {
+        try {
+            MediaCodecInfo decoderInfo = MediaCodecUtil.getDecoderInfo(mimeType, secure);
+            if (decoderInfo == null || decoderInfo.capabilities == null) {
+                return;
+            }
+            VideoCapabilities videoCapabilities = decoderInfo.capabilities.getVideoCapabilities();
+            if (videoCapabilities == null) {
+                return;
+            }
+            for (int[] size : PROBED_VIDEO_SIZES) {
+                if (videoCapabilities.isSizeSupported(size[0], size[1])) {
+                    limits.put(mimeType, new VideoLimits(size[0], size[1],
+                            videoCapabilities.getBitrateRange().getUpper()));
+                    return;
+                }
+            }
+        } catch (MediaCodecUtil.DecoderQueryException e) {
+            Log.w(TAG, "Unable to query video limits of " + mimeType, e);
+        }
+    }
+
+    private static void probeWidevine(DeviceCapabilities capabilities) {
+        if (Util.SDK_INT < 18) {
+            capabilities.widevineUnsupported = true;
+            return;
+        }
+        FrameworkMediaDrm mediaDrm = null;
+        try {
+            mediaDrm = FrameworkMediaDrm.newInstance(C.WIDEVINE_UUID);
+            capabilities.widevineSecurityLevel = mediaDrm.getPropertyString(WIDEVINE_PROPERTY_SECURITY_LEVEL);
+        } catch (UnsupportedDrmException e) {
+            // Instantiation errors, MediaDrm busy for example, say nothing about support.
+            capabilities.widevineUnsupported = e.reason == UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME;
+            if (!capabilities.widevineUnsupported) {
+                Log.w(TAG, "Unable to probe Widevine", e);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to probe Widevine", e);
+        } finally {
+            if (mediaDrm != null) {
+                mediaDrm.release();
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.brentvatne.exoplayer;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
+
+import com.brentvatne.exoplayer.drm.DrmTimings;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSourceException;
 import com.google.android.exoplayer2.upstream.DataSpec;
@@ -205,7 +207,13 @@ public class DrmHttpDataSource implements HttpDataSource {
 
         int responseCode;
         try {
+            DrmTimings timings = DrmTimings.current();
+            long requestStartMs = DrmTimings.now();
             responseCode = connection.getResponseCode();
+            if (timings != null) {
+                // Includes writing the request body, as with OkHttp.
+                timings.recordSince(DrmTimings.PHASE_TTFB, requestStartMs);
+            }
         } catch (IOException e) {
             closeConnectionQuietly();
             throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
@@ -438,20 +446,34 @@ public class DrmHttpDataSource implements HttpDataSource {
         if (postBody != null) {
             connection.setRequestMethod("POST");
             if (postBody.length == 0) {
-                connection.connect();
+                connect(connection);
             } else  {
                 connection.setFixedLengthStreamingMode(postBody.length);
-                connection.connect();
+                connect(connection);
                 OutputStream os = connection.getOutputStream();
                 os.write(postBody);
                 os.close();
             }
         } else {
-            connection.connect();
+            connect(connection);
         }
         return connection;
     }
 
+    /**
+     * Connects, recording the time taken as the connect phase of the current {@link DrmTimings}.
+     * HttpURLConnection resolves, connects and handshakes in one call, so DNS and TLS are not
+     * reported separately.
+     */
+    private static void connect(HttpURLConnection connection) throws IOException {
+        DrmTimings timings = DrmTimings.current();
+        long connectStartMs = DrmTimings.now();
+        connection.connect();
+        if (timings != null) {
+            timings.recordSince(DrmTimings.PHASE_CONNECT, connectStartMs);
+        }
+    }
+
     /**
      * Handles a redirect.
      *
@@ -29,12 +29,21 @@ import java.util.List;
 @TargetApi(16)
 public final class ExoPlayerView extends FrameLayout {
 
+    public interface FirstFrameListener {
+
+        /**
+         * Called when the first frame of a video, or after a surface change, has been rendered.
+         */
+        void onRenderedFirstFrame();
+    }
+
     private View surfaceView;
     private final View shutterView;
     private final SubtitleView subtitleLayout;
     private final AspectRatioFrameLayout layout;
     private final ComponentListener componentListener;
     private SimpleExoPlayer player;
+    private FirstFrameListener firstFrameListener;
     private Context context;
     private ViewGroup.LayoutParams layoutParams;
 
@@ -106,6 +115,10 @@ public final class ExoPlayerView extends FrameLayout {
         }
     }
 
+    public void setFirstFrameListener(FirstFrameListener firstFrameListener) {
+        this.firstFrameListener = firstFrameListener;
+    }
+
     /**
      * Set the {@link SimpleExoPlayer} to use. The {@link SimpleExoPlayer#setTextOutput} and
      * {@link SimpleExoPlayer#setVideoListener} method of the player will be called and previous
@@ -212,6 +225,9 @@ public final class ExoPlayerView extends FrameLayout {
         @Override
         public void onRenderedFirstFrame() {
             shutterView.setVisibility(INVISIBLE);
+            if (firstFrameListener != null) {
+                firstFrameListener.onRenderedFirstFrame();
+            }
         }
 
         // ExoPlayer.EventListener implementation
@@ -0,0 +1,59 @@
+package com.brentvatne.exoplayer;
+
+/**
+ * Holds the latency of a live stream at a target by playing slightly faster when behind it and
+ * slightly slower when ahead. Latencies far behind the target are left alone, the user is then
+ * watching time shifted.
+ */
+final class LiveCatchUpController {
+
+    static final String STATE_IN_SYNC = "inSync";
+    static final String STATE_SPEEDING_UP = "speedingUp";
+    static final String STATE_SLOWING_DOWN = "slowingDown";
+    static final String STATE_TIME_SHIFTED = "timeShifted";
+
+    /* Latency error tolerated without adjusting speed. */
+    private static final long TOLERANCE_MS = 500;
+    /* Errors beyond this are not caught up with. */
+    private static final long MAX_CATCH_UP_ERROR_MS = 10000;
+    /* Speed adjustment per ms of latency error, so 2 s behind plays 5% faster. */
+    private static final float PROPORTIONAL_GAIN = 0.05f / 2000;
+    private static final float MAX_SPEED_ADJUSTMENT = 0.05f;
+
+    private final long targetLatencyMs;
+    private String state = STATE_IN_SYNC;
+
+    LiveCatchUpController(long targetLatencyMs) {
+        this.targetLatencyMs = targetLatencyMs;
+    }
+
+    long getTargetLatencyMs() {
+        return targetLatencyMs;
+    }
+
+    /**
+     * Returns the playback speed to hold the target given the current latency.
+     */
+    float getSpeed(long latencyMs) {
+        long errorMs = latencyMs - targetLatencyMs;
+        if (errorMs > MAX_CATCH_UP_ERROR_MS) {
+            state = STATE_TIME_SHIFTED;
+            return 1f;
+        }
+        if (Math.abs(errorMs) <= TOLERANCE_MS) {
+            state = STATE_IN_SYNC;
+            return 1f;
+        }
+        float adjustment = Math.max(-MAX_SPEED_ADJUSTMENT,
+                Math.min(MAX_SPEED_ADJUSTMENT, errorMs * PROPORTIONAL_GAIN));
+        state = adjustment > 0 ? STATE_SPEEDING_UP : STATE_SLOWING_DOWN;
+        return 1f + adjustment;
+    }
+
+    /**
+     * State after the last {@link #getSpeed} call.
+     */
+    String getState() {
+        return state;
+    }
+}
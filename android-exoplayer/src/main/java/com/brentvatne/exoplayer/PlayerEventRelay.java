@@ -0,0 +1,215 @@
+package com.brentvatne.exoplayer;
+
+import android.util.Log;
+import android.view.Surface;
+
+import com.brentvatne.exoplayer.manifest.ReusingDashManifestParser;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.DecoderCounters;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.video.VideoRendererEventListener;
+
+import java.io.IOException;
+
+/**
+ * Passes the DRM, manifest and media source events of a player to the view currently owning it,
+ * so the player can outlive the view it was built by. Events of a player without owner are only
+ * logged.
+ * <p>
+ * Also tracks whether the video renderer of the player is enabled, and so may hold a codec, for
+ * the {@link DecoderBudget}. Added as video debug listener when the player is built.
+ */
+final class PlayerEventRelay implements DefaultDrmSessionManager.EventListener,
+        ReusingDashManifestParser.Listener, MediaSourceEventListener, VideoRendererEventListener {
+
+    private static final String TAG = "PlayerEventRelay";
+
+    private volatile DefaultDrmSessionManager.EventListener drmEventListener;
+    private volatile ReusingDashManifestParser.Listener manifestListener;
+    private volatile MediaSourceEventListener mediaSourceEventListener;
+    /* Main thread, where the player reports renderer events. */
+    private boolean videoDecoderEnabled;
+
+    /**
+     * Routes the events to the given listeners from now on, pass nulls to drop them.
+     */
+    void setTarget(DefaultDrmSessionManager.EventListener drmEventListener,
+                   ReusingDashManifestParser.Listener manifestListener,
+                   MediaSourceEventListener mediaSourceEventListener) {
+        this.drmEventListener = drmEventListener;
+        this.manifestListener = manifestListener;
+        this.mediaSourceEventListener = mediaSourceEventListener;
+    }
+
+    /**
+     * Whether the video renderer is enabled, from {@link #onVideoEnabled} until the playback
+     * thread disabled it and released its codec.
+     */
+    boolean isVideoDecoderEnabled() {
+        return videoDecoderEnabled;
+    }
+
+    // DefaultDrmSessionManager.EventListener implementation
+
+    @Override
+    public void onDrmKeysLoaded() {
+        DefaultDrmSessionManager.EventListener drmEventListener = this.drmEventListener;
+        if (drmEventListener != null) {
+            drmEventListener.onDrmKeysLoaded();
+        } else {
+            Log.d(TAG, "Keys loaded without owner");
+        }
+    }
+
+    @Override
+    public void onDrmSessionManagerError(Exception e) {
+        DefaultDrmSessionManager.EventListener drmEventListener = this.drmEventListener;
+        if (drmEventListener != null) {
+            drmEventListener.onDrmSessionManagerError(e);
+        } else {
+            Log.w(TAG, "DRM error without owner", e);
+        }
+    }
+
+    @Override
+    public void onDrmKeysRestored() {
+        DefaultDrmSessionManager.EventListener drmEventListener = this.drmEventListener;
+        if (drmEventListener != null) {
+            drmEventListener.onDrmKeysRestored();
+        }
+    }
+
+    @Override
+    public void onDrmKeysRemoved() {
+        DefaultDrmSessionManager.EventListener drmEventListener = this.drmEventListener;
+        if (drmEventListener != null) {
+            drmEventListener.onDrmKeysRemoved();
+        }
+    }
+
+    // ReusingDashManifestParser.Listener implementation
+
+    @Override
+    public void onManifestParsed(DashManifest manifest, long parseTimeMs, int sizeBytes,
+                                 boolean reused) {
+        ReusingDashManifestParser.Listener manifestListener = this.manifestListener;
+        if (manifestListener != null) {
+            manifestListener.onManifestParsed(manifest, parseTimeMs, sizeBytes, reused);
+        }
+    }
+
+    // MediaSourceEventListener implementation
+
+    @Override
+    public void onLoadStarted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                              int trackSelectionReason, Object trackSelectionData,
+                              long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onLoadStarted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                    trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs);
+        }
+    }
+
+    @Override
+    public void onLoadCompleted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                int trackSelectionReason, Object trackSelectionData,
+                                long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                long loadDurationMs, long bytesLoaded) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onLoadCompleted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                    trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                    loadDurationMs, bytesLoaded);
+        }
+    }
+
+    @Override
+    public void onLoadCanceled(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                               int trackSelectionReason, Object trackSelectionData,
+                               long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                               long loadDurationMs, long bytesLoaded) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onLoadCanceled(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                    trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                    loadDurationMs, bytesLoaded);
+        }
+    }
+
+    @Override
+    public void onLoadError(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                            int trackSelectionReason, Object trackSelectionData,
+                            long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                            long loadDurationMs, long bytesLoaded, IOException error,
+                            boolean wasCanceled) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onLoadError(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                    trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                    loadDurationMs, bytesLoaded, error, wasCanceled);
+        }
+    }
+
+    @Override
+    public void onUpstreamDiscarded(int trackType, long mediaStartTimeMs, long mediaEndTimeMs) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onUpstreamDiscarded(trackType, mediaStartTimeMs, mediaEndTimeMs);
+        }
+    }
+
+    @Override
+    public void onDownstreamFormatChanged(int trackType, Format trackFormat, int trackSelectionReason,
+                                          Object trackSelectionData, long mediaTimeMs) {
+        MediaSourceEventListener listener = mediaSourceEventListener;
+        if (listener != null) {
+            listener.onDownstreamFormatChanged(trackType, trackFormat, trackSelectionReason,
+                    trackSelectionData, mediaTimeMs);
+        }
+    }
+
+    // VideoRendererEventListener implementation
+
+    @Override
+    public void onVideoEnabled(DecoderCounters counters) {
+        videoDecoderEnabled = true;
+    }
+
+    @Override
+    public void onVideoDecoderInitialized(String decoderName, long initializedTimestampMs,
+                                          long initializationDurationMs) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onVideoInputFormatChanged(Format format) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onDroppedFrames(int count, long elapsedMs) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
+                                   float pixelWidthHeightRatio) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onRenderedFirstFrame(Surface surface) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onVideoDisabled(DecoderCounters counters) {
+        videoDecoderEnabled = false;
+        // The codec is released, the budget can hand it out.
+        DecoderBudget.getInstance().invalidate();
+    }
+}
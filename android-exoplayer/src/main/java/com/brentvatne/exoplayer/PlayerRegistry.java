@@ -0,0 +1,119 @@
+package com.brentvatne.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the players of unmounted views alive for a grace period, keyed by the playerKey prop, so a
+ * view mounted with the same key continues playback instead of starting over. The number of idle
+ * players is capped process wide, the longest idle one is released first.
+ * <p>
+ * Accessed on the main thread only.
+ */
+final class PlayerRegistry {
+
+    private static final String TAG = "PlayerRegistry";
+
+    static final long DEFAULT_GRACE_PERIOD_MS = 5000;
+    static final int DEFAULT_MAX_IDLE_PLAYERS = 2;
+
+    private static PlayerRegistry instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /* In the order the players were parked. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private int maxIdlePlayers = DEFAULT_MAX_IDLE_PLAYERS;
+
+    static PlayerRegistry getInstance() {
+        if (instance == null) {
+            instance = new PlayerRegistry();
+        }
+        return instance;
+    }
+
+    private PlayerRegistry() {
+    }
+
+    void setMaxIdlePlayers(int maxIdlePlayers) {
+        this.maxIdlePlayers = maxIdlePlayers;
+        trim();
+    }
+
+    /**
+     * Keeps {@code detachedPlayer} under {@code key} for {@code gracePeriodMs}, replacing and
+     * releasing a player already kept under it.
+     */
+    void park(String key, DetachedPlayer detachedPlayer, long gracePeriodMs) {
+        remove(key, true);
+        Entry entry = new Entry(key, detachedPlayer);
+        entries.put(key, entry);
+        handler.postDelayed(entry, gracePeriodMs);
+        trim();
+    }
+
+    /**
+     * Returns the player kept under {@code key} and hands over its ownership, or null.
+     */
+    DetachedPlayer take(String key) {
+        Entry entry = remove(key, false);
+        return entry != null ? entry.detachedPlayer : null;
+    }
+
+    /**
+     * Releases all kept players.
+     */
+    void clear() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            it.remove();
+            handler.removeCallbacks(entry);
+            entry.detachedPlayer.release();
+        }
+    }
+
+    private Entry remove(String key, boolean release) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            handler.removeCallbacks(entry);
+            if (release) {
+                entry.detachedPlayer.release();
+            }
+        }
+        return entry;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxIdlePlayers && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            handler.removeCallbacks(entry);
+            Log.d(TAG, "Releasing idle player " + entry.key + " over the limit");
+            entry.detachedPlayer.release();
+        }
+    }
+
+    private final class Entry implements Runnable {
+
+        final String key;
+        final DetachedPlayer detachedPlayer;
+
+        Entry(String key, DetachedPlayer detachedPlayer) {
+            this.key = key;
+            this.detachedPlayer = detachedPlayer;
+        }
+
+        @Override
+        public void run() {
+            Log.d(TAG, "Grace period of " + key + " expired");
+            if (entries.get(key) == this) {
+                remove(key, true);
+            }
+        }
+    }
+}
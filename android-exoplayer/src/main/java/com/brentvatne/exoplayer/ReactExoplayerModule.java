@@ -0,0 +1,152 @@
+package com.brentvatne.exoplayer;
+
+import com.brentvatne.exoplayer.cache.SegmentCache;
+import com.brentvatne.exoplayer.drm.LicensePrefetcher;
+import com.brentvatne.exoplayer.latens.LatensMediaDrmCallback;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class ReactExoplayerModule extends ReactContextBaseJavaModule {
+
+    private static final String REACT_CLASS = "RCTVideoModule";
+
+    private static final String PROP_MANIFEST_URL = "uri";
+    private static final String PROP_DRM_TYPE = "drmType";
+    private static final String PROP_DRM_LICENSE_URL = "licenseUrl";
+    private static final String PROP_DEVICE_ID = "deviceId";
+    private static final String PROP_CUSTOMER_ID = "customerId";
+    private static final String PROP_DRM_TRANSPORT = "drmTransport";
+
+    private static final String PROP_MAX_IDLE_CONNECTIONS = "maxIdleConnections";
+    private static final String PROP_KEEP_ALIVE_DURATION_MS = "keepAliveDurationMs";
+
+    private static final String ERROR_CODE_PREFETCH = "E_LICENSE_PREFETCH";
+
+    public ReactExoplayerModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        // Starts probing on the first launch, so the first player does not have to wait for it.
+        DeviceCapabilities.get(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return REACT_CLASS;
+    }
+
+    /**
+     * Acquires the license of a DASH manifest ahead of time, so a later setSrc of the same
+     * content on any player starts decrypting without waiting on the license server.
+     */
+    @ReactMethod
+    public void prefetchLicense(ReadableMap options, final Promise promise) {
+        String manifestUrl = options.hasKey(PROP_MANIFEST_URL) ? options.getString(PROP_MANIFEST_URL) : null;
+        String drmType = options.hasKey(PROP_DRM_TYPE) ? options.getString(PROP_DRM_TYPE) : "widevine";
+        String licenseUrl = options.hasKey(PROP_DRM_LICENSE_URL) ? options.getString(PROP_DRM_LICENSE_URL) : null;
+        String deviceId = options.hasKey(PROP_DEVICE_ID) ? options.getString(PROP_DEVICE_ID) : null;
+        String customerId = options.hasKey(PROP_CUSTOMER_ID) ? options.getString(PROP_CUSTOMER_ID) : null;
+        String drmTransport = options.hasKey(PROP_DRM_TRANSPORT) ? options.getString(PROP_DRM_TRANSPORT) : null;
+        if (manifestUrl == null || licenseUrl == null) {
+            promise.reject(ERROR_CODE_PREFETCH, "uri and licenseUrl are required");
+            return;
+        }
+        UUID drmUUID;
+        try {
+            drmUUID = ReactExoplayerView.parseDrmUuid(drmType);
+        } catch (RuntimeException e) {
+            promise.reject(ERROR_CODE_PREFETCH, "Unsupported drm type: " + drmType, e);
+            return;
+        }
+
+        LatensMediaDrmCallback drmCallback = new LatensMediaDrmCallback(licenseUrl, deviceId,
+                customerId, DataSourceUtil.getDrmHttpDataSourceFactory(drmTransport));
+        DataSource.Factory manifestDataSourceFactory = DataSourceUtil.getMediaDataSourceFactory(
+                getReactApplicationContext(), ReactExoplayerView.userAgent, null, 6000, 4000);
+        LicensePrefetcher.getInstance(getReactApplicationContext()).prefetch(manifestUrl, drmUUID,
+                licenseUrl, drmCallback, manifestDataSourceFactory.createDataSource(),
+                new LicensePrefetcher.Callback() {
+                    @Override
+                    public void onPrefetched(boolean licenseStored) {
+                        WritableMap result = Arguments.createMap();
+                        result.putBoolean("licenseStored", licenseStored);
+                        promise.resolve(result);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        promise.reject(ERROR_CODE_PREFETCH, e.getMessage(), e);
+                    }
+                });
+    }
+
+    @ReactMethod
+    public void setMaxPrefetchedLicenses(int maxEntries) {
+        LicensePrefetcher.getInstance(getReactApplicationContext()).setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Opens connections to the given CDN and license urls on the client shared by all players, so
+     * the first requests of a player do not pay for DNS, TCP and TLS. Resolves with the outcome per
+     * url once all are done.
+     */
+    @ReactMethod
+    public void prewarmConnections(ReadableArray urls, final Promise promise) {
+        List<String> urlList = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            urlList.add(urls.getString(i));
+        }
+        final WritableArray results = Arguments.createArray();
+        ConnectionPrewarmer.prewarm(DataSourceUtil.getOkHttpClient(), urlList,
+                new ConnectionPrewarmer.Listener() {
+                    @Override
+                    public void onPrewarmed(String url, boolean success, long timeMs) {
+                        WritableMap result = Arguments.createMap();
+                        result.putString("url", url);
+                        result.putBoolean("success", success);
+                        result.putDouble("timeMs", timeMs);
+                        synchronized (results) {
+                            results.pushMap(result);
+                        }
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        promise.resolve(results);
+                    }
+                });
+    }
+
+    @ReactMethod
+    public void getSegmentCacheStats(Promise promise) {
+        SegmentCache.Stats stats = SegmentCache.getInstance(getReactApplicationContext()).getStats();
+        WritableMap result = Arguments.createMap();
+        result.putDouble("hitBytes", stats.hitBytes);
+        result.putDouble("missBytes", stats.missBytes);
+        result.putDouble("cacheSizeBytes", stats.cacheSizeBytes);
+        promise.resolve(result);
+    }
+
+    /**
+     * Tunes the connection pool of the HTTP client shared by all players, applies to players
+     * created afterwards.
+     */
+    @ReactMethod
+    public void configureHttpClient(ReadableMap options) {
+        int maxIdleConnections = options.hasKey(PROP_MAX_IDLE_CONNECTIONS)
+                ? options.getInt(PROP_MAX_IDLE_CONNECTIONS) : DataSourceUtil.DEFAULT_MAX_IDLE_CONNECTIONS;
+        long keepAliveDurationMs = options.hasKey(PROP_KEEP_ALIVE_DURATION_MS)
+                ? (long) options.getDouble(PROP_KEEP_ALIVE_DURATION_MS) : DataSourceUtil.DEFAULT_KEEP_ALIVE_DURATION_MS;
+        DataSourceUtil.configureConnectionPool(maxIdleConnections, keepAliveDurationMs);
+    }
+}
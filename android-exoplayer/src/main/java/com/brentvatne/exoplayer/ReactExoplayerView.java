@@ -3,20 +3,34 @@ package com.brentvatne.exoplayer;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Rect;
 import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.accessibility.CaptioningManager;
 import android.widget.FrameLayout;
 
+import com.brentvatne.exoplayer.bitrate.BandwidthEstimateStore;
 import com.brentvatne.exoplayer.bitrate.BitrateAdaptionPreset;
+import com.brentvatne.exoplayer.bitrate.SharedBandwidthMeter;
 import com.brentvatne.exoplayer.bitrate.TadaamDefaultBitrateAdaptionPreset;
+import com.brentvatne.exoplayer.cache.SegmentCache;
+import com.brentvatne.exoplayer.cache.SegmentPrefetcher;
+import com.brentvatne.exoplayer.cdn.CdnFailover;
+import com.brentvatne.exoplayer.telemetry.StartupTracer;
+import com.brentvatne.exoplayer.telemetry.TransferLog;
+import com.brentvatne.exoplayer.drm.DrmSessionManagerPool;
+import com.brentvatne.exoplayer.drm.DrmTimings;
+import com.brentvatne.exoplayer.manifest.ReusingDashManifestParser;
 import com.brentvatne.exoplayer.latens.LatensMediaDrmCallback;
 import com.brentvatne.react.R;
 import com.brentvatne.receiver.AudioBecomingNoisyReceiver;
@@ -43,7 +57,6 @@ import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
-import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
 import com.google.android.exoplayer2.drm.UnsupportedDrmException;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
@@ -52,9 +65,11 @@ import com.google.android.exoplayer2.metadata.MetadataRenderer;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
 import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
 import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
@@ -64,8 +79,6 @@ import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.Util;
@@ -76,7 +89,9 @@ import java.net.CookiePolicy;
 import java.lang.Math;
 import java.util.Map;
 import java.lang.Object;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -89,7 +104,10 @@ class ReactExoplayerView extends FrameLayout implements
         BecomingNoisyListener,
         AudioManager.OnAudioFocusChangeListener,
         MetadataRenderer.Output,
-        DefaultDrmSessionManager.EventListener {
+        ExoPlayerView.FirstFrameListener,
+        DecoderBudget.Member,
+        DefaultDrmSessionManager.EventListener,
+        ReusingDashManifestParser.Listener {
 
     private static final String TAG = "ReactExoplayerView";
 
@@ -98,6 +116,9 @@ class ReactExoplayerView extends FrameLayout implements
     private static final DefaultBandwidthMeter BANDWIDTH_METER = new DefaultBandwidthMeter();
     private static final CookieManager DEFAULT_COOKIE_MANAGER;
     private static final int SHOW_PROGRESS = 1;
+    private static final int TARGET_BUFFER_BYTES = 26214400;
+    static final int DEFAULT_PRELOAD_MAX_BUFFER_MS = 5000;
+    static final int DEFAULT_PRELOAD_MAX_BYTES = 4 * 1024 * 1024;
 
     static {
         DEFAULT_COOKIE_MANAGER = new CookieManager();
@@ -109,10 +130,24 @@ class ReactExoplayerView extends FrameLayout implements
     private Handler mainHandler;
     private ExoPlayerView exoPlayerView;
 
-    private DefaultDataSourceFactory mChunkSourceFactory, mMediaDataSourceFactory;
+    private DataSource.Factory mChunkSourceFactory, mManifestDataSourceFactory, mMediaDataSourceFactory;
 
     private SimpleExoPlayer player;
     private DefaultTrackSelector trackSelector;
+    private ConfigurableLoadControl loadControl;
+    private DrmSessionManagerPool.Lease drmLease;
+    private DrmTimings drmTimings;
+    private SegmentCache.Lease segmentCacheLease;
+    private volatile SegmentPrefetcher segmentPrefetcher;
+    private final TransferLog transferLog = new TransferLog(TransferLog.DEFAULT_CAPACITY);
+    private final CdnFailover cdnFailover = new CdnFailover();
+    private final StartupTracer startupTracer = new StartupTracer();
+    private final MediaSourceEventListener mediaSourceEventListener =
+            startupTracer.wrap(transferLog.getMediaSourceEventListener());
+    /* Routes the events of the current player here, replaced with the player. */
+    private PlayerEventRelay playerEventRelay;
+    private long lastTransferLogEventMs;
+    private ZapPreloader zapPreloader;
     private boolean playerNeedsSource;
 
     private int resumeWindow;
@@ -123,8 +158,25 @@ class ReactExoplayerView extends FrameLayout implements
     private boolean isPaused;
     private boolean isBuffering;
     private float rate = 1f;
+    private long liveTargetLatencyMs = 0;
+    private LiveCatchUpController liveCatchUpController;
+    /* Speed set by the catch-up controller, 1 when not adjusting. */
+    private float liveCatchUpSpeed = 1f;
+    private final Timeline.Window window = new Timeline.Window();
+
+    /* Whether this view is a member of the decoder budget, while attached and opted in. */
+    private boolean inDecoderBudget;
+    /* Views outside the budget always have a decoder. */
+    private boolean decoderGranted = true;
+    /* Set when a decoder was granted until the first frame it renders. */
+    private boolean awaitingGrantedFirstFrame;
+    private float visibleFraction;
+    private final Rect visibleRect = new Rect();
+    private final VisibilityListener visibilityListener = new VisibilityListener();
 
     private DefaultBandwidthMeter mBandwidthMeter;
+    /* Feeds mBandwidthMeter, shares the estimate with concurrently loading players. */
+    private SharedBandwidthMeter.Participant mSharedBandwidthMeter;
 
     private int minBufferMs = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
     private int maxBufferMs = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
@@ -137,11 +189,13 @@ class ReactExoplayerView extends FrameLayout implements
     private float mBandwidthFraction;
     private int mBandwidthMeterMaxWeight;
     private int mMaxInitialBitrate;
+    /* Network the player was created on, its bandwidth estimate is stored under it. */
+    private String bandwidthNetworkKey;
     private float mBufferedFractionToLiveEdgeForQualityIncrease;
 
     private AtomicInteger mMaxBitrate = new AtomicInteger(0);
 
-    private static String userAgent = "tadaam";
+    static String userAgent = "tadaam";
 
     // Props from React
     private Uri srcUri;
@@ -161,6 +215,18 @@ class ReactExoplayerView extends FrameLayout implements
     private String customerId = null;
     private String deviceId = null;
     private String[] drmLicenseHeader = null;
+    private String drmTransport = DataSourceUtil.DRM_TRANSPORT_DEFAULT;
+    private long drmRenewalLeadTimeMs = 60000;
+    private long segmentCacheMaxBytes = 0;
+    private Set<String> segmentCacheIgnoredQueryParameters = SegmentCache.DEFAULT_IGNORED_QUERY_PARAMETERS;
+    private int segmentPrefetchCount = 0;
+    private long segmentPrefetchMaxBytes = 0;
+    private long transferLogUpdateInterval = 0;
+    private int preloadMaxBufferMs = DEFAULT_PRELOAD_MAX_BUFFER_MS;
+    private int preloadMaxBytes = DEFAULT_PRELOAD_MAX_BYTES;
+    private String playerKey = null;
+    private long playerGracePeriodMs = PlayerRegistry.DEFAULT_GRACE_PERIOD_MS;
+    private boolean decoderBudgetEnabled = false;
     private boolean useTextureView = false;
     private Map<String, String> requestHeaders;
     // \ End props
@@ -183,7 +249,12 @@ class ReactExoplayerView extends FrameLayout implements
                         long pos = player.getCurrentPosition();
                         long bufferedDuration = player.getBufferedPercentage() * player.getDuration() / 100;
                         long currentBitrate = player.getVideoFormat() != null? player.getVideoFormat().bitrate : 0;
-                        eventEmitter.progressChanged(pos, bufferedDuration, player.getDuration(), currentBitrate);
+                        long liveLatencyMs = getLiveLatencyMs();
+                        String catchUpState = liveLatencyMs != C.TIME_UNSET
+                                ? updateLiveCatchUp(liveLatencyMs) : null;
+                        eventEmitter.progressChanged(pos, bufferedDuration, player.getDuration(), currentBitrate,
+                                liveLatencyMs, catchUpState);
+                        maybeEmitTransferLog();
                         msg = obtainMessage(SHOW_PROGRESS);
                         sendMessageDelayed(msg, Math.round(mProgressUpdateInterval));
                     }
@@ -221,6 +292,7 @@ class ReactExoplayerView extends FrameLayout implements
         clearResumePosition();
 
         mainHandler = new Handler();
+        zapPreloader = new ZapPreloader(mainHandler);
         if (CookieHandler.getDefault() != DEFAULT_COOKIE_MANAGER) {
             CookieHandler.setDefault(DEFAULT_COOKIE_MANAGER);
         }
@@ -230,6 +302,7 @@ class ReactExoplayerView extends FrameLayout implements
                 LayoutParams.MATCH_PARENT);
         exoPlayerView = new ExoPlayerView(getContext());
         exoPlayerView.setLayoutParams(layoutParams);
+        exoPlayerView.setFirstFrameListener(this);
 
         addView(exoPlayerView, 0, layoutParams);
     }
@@ -238,6 +311,9 @@ class ReactExoplayerView extends FrameLayout implements
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         Log.d("onAttachedToWindow", "drm url");
+        if (decoderBudgetEnabled) {
+            joinDecoderBudget();
+        }
         initializePlayer();
 
         // Start KeepAwake
@@ -247,7 +323,14 @@ class ReactExoplayerView extends FrameLayout implements
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        stopPlayback();
+        if (playerKey != null && player != null && !playerNeedsSource) {
+            onStopPlayback();
+            parkPlayer();
+            zapPreloader.clear();
+        } else {
+            stopPlayback();
+        }
+        leaveDecoderBudget();
 
         // Stop KeepAwake
         deactivateKeepAwake();
@@ -302,6 +385,7 @@ class ReactExoplayerView extends FrameLayout implements
     @Override
     public void onHostDestroy() {
         stopPlayback();
+        PlayerRegistry.getInstance().clear();
     }
 
     public void cleanUpResources() {
@@ -325,34 +409,52 @@ class ReactExoplayerView extends FrameLayout implements
         mMaxInitialBitrate = preset.maxInitialBitrate();
         mBufferedFractionToLiveEdgeForQualityIncrease = preset.bufferedFractionToLiveEdgeForQualityIncrease();
         mBufferForPlaybackMs = preset.bufferForPlaybackMs();
+        mManifestDataSourceFactory = cdnFailover.wrap(DataSourceUtil.getManifestDataSourceFactory(
+                themedReactContext, userAgent, null, 6000, 4000));
+        mMediaDataSourceFactory = cdnFailover.wrap(DataSourceUtil.getMediaDataSourceFactory(
+                themedReactContext, userAgent, null, 6000, 4000));
+        initBandwidthMeter();
+    }
+
+    /**
+     * Gives this view a new bandwidth meter and a chunk source factory feeding it. A previous meter
+     * stays with the player it measured when that player is detached.
+     */
+    private void initBandwidthMeter() {
         mBandwidthMeter = new DefaultBandwidthMeter(mainHandler, null, mBandwidthMeterMaxWeight);
-        mMediaDataSourceFactory = new DefaultDataSourceFactory(themedReactContext, null,
-                new DefaultHttpDataSourceFactory(userAgent, null, 6000, 4000, false));
-        mChunkSourceFactory = new DefaultDataSourceFactory(themedReactContext, mBandwidthMeter,
-                new DefaultHttpDataSourceFactory(userAgent, mBandwidthMeter, 8000, 8000, false));
+        mSharedBandwidthMeter = SharedBandwidthMeter.getInstance().newParticipant(mBandwidthMeter);
+        mChunkSourceFactory = buildChunkSourceFactory(mSharedBandwidthMeter, transferLog);
+    }
+
+    private DataSource.Factory buildChunkSourceFactory(SharedBandwidthMeter.Participant bandwidthMeter,
+                                                       @Nullable TransferLog transferLog) {
+        return cdnFailover.wrap(DataSourceUtil.getMediaDataSourceFactory(
+                themedReactContext, userAgent, bandwidthMeter, 8000, 8000, transferLog));
     }
 
     private void initializePlayer() {
         Log.d("initializePlayer", "drm url");
+        startupTracer.mark(StartupTracer.MILESTONE_INITIALIZE_PLAYER);
+        if (player == null && playerKey != null && srcUri != null
+                && adoptDetachedPlayer(PlayerRegistry.getInstance().take(playerKey), false)) {
+            return;
+        }
+        if ((player == null || playerNeedsSource) && srcUri != null
+                && adoptDetachedPlayer(zapPreloader.take(srcUri), true)) {
+            return;
+        }
         if (player == null) {
-            AdaptiveTrackSelection.Factory localFactory = new AdaptiveTrackSelection.Factory(
-                    mBandwidthMeter,
-                    mMaxInitialBitrate,
-                    mMinDurationForQualityIncreaseMs,
-                    mMaxDurationForQualityDecreaseMs,
-                    mMinDurationToRetainAfterDiscardMs,
-                    mBandwidthFraction,
-                    mBufferedFractionToLiveEdgeForQualityIncrease,
-                    AdaptiveTrackSelection.DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS,
-                    Clock.DEFAULT);
-            trackSelector = new DefaultTrackSelector(localFactory);
-            DefaultAllocator allocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
-            DefaultLoadControl defaultLoadControl = new DefaultLoadControl(allocator,
+            playerEventRelay = new PlayerEventRelay();
+            playerEventRelay.setTarget(this, this, mediaSourceEventListener);
+            BandwidthEstimateStore estimateStore = BandwidthEstimateStore.getInstance(getContext());
+            bandwidthNetworkKey = estimateStore.getNetworkKey();
+            trackSelector = buildTrackSelector(mSharedBandwidthMeter, bandwidthNetworkKey);
+            loadControl = new ConfigurableLoadControl(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
                     minBufferMs,
                     maxBufferMs,
                     mBufferForPlaybackMs,
                     bufferForPlaybackAfterRebufferMs,
-                    26214400,
+                    TARGET_BUFFER_BYTES,
                     true);
 
             DrmSessionManager<FrameworkMediaCrypto> drmSessionManager = null;
@@ -368,22 +470,16 @@ class ReactExoplayerView extends FrameLayout implements
                     return;
                 }
             }
+            if (segmentCacheMaxBytes > 0) {
+                segmentCacheLease = SegmentCache.getInstance(getContext()).acquire(segmentCacheMaxBytes);
+            }
             DefaultRenderersFactory renderersFactory = new DefaultRenderersFactory(getContext(),
                     drmSessionManager, DefaultRenderersFactory.EXTENSION_RENDERER_MODE_OFF);
 
-            player = ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector, defaultLoadControl);
-            player.addListener(this);
-            player.addMetadataOutput(this);
-            exoPlayerView.setPlayer(player);
-            audioBecomingNoisyReceiver.setListener(this);
-            setPlayWhenReady(!isPaused);
+            player = ExoPlayerFactory.newSimpleInstance(renderersFactory, trackSelector, loadControl);
+            player.addVideoDebugListener(playerEventRelay);
+            attachPlayer();
             playerNeedsSource = true;
-
-            PlaybackParameters params = new PlaybackParameters(rate, 1f);
-            player.setPlaybackParameters(params);
-            player.setVideoScalingMode(C.VIDEO_SCALING_MODE_SCALE_TO_FIT_WITH_CROPPING);
-            player.setRepeatMode(repeat? Player.REPEAT_MODE_ONE: Player.REPEAT_MODE_OFF);
-
         }
         if (playerNeedsSource && srcUri != null) {
             MediaSource mediaSource = buildMediaSource(srcUri, extension);
@@ -391,6 +487,7 @@ class ReactExoplayerView extends FrameLayout implements
             if (haveResumePosition) {
                 player.seekTo(resumeWindow, resumePosition);
             }
+            startupTracer.mark(StartupTracer.MILESTONE_PREPARE);
             player.prepare(mediaSource, !haveResumePosition, false);
 
             setMaxBitrate(mMaxBitrate.intValue());
@@ -402,6 +499,217 @@ class ReactExoplayerView extends FrameLayout implements
         }
     }
 
+    /**
+     * Builds a track selector starting from the last bandwidth estimate on the current network and
+     * capped to what the device can decode.
+     */
+    private DefaultTrackSelector buildTrackSelector(BandwidthMeter bandwidthMeter, String networkKey) {
+        long storedEstimate = BandwidthEstimateStore.getInstance(getContext()).getEstimate(networkKey);
+        // The selection applies the bandwidth fraction to estimates, not to the initial bitrate.
+        int initialBitrate = storedEstimate != BandwidthMeter.NO_ESTIMATE
+                ? (int) Math.min(Integer.MAX_VALUE, storedEstimate * mBandwidthFraction)
+                : mMaxInitialBitrate;
+        AdaptiveTrackSelection.Factory localFactory = new AdaptiveTrackSelection.Factory(
+                bandwidthMeter,
+                initialBitrate,
+                mMinDurationForQualityIncreaseMs,
+                mMaxDurationForQualityDecreaseMs,
+                mMinDurationToRetainAfterDiscardMs,
+                mBandwidthFraction,
+                mBufferedFractionToLiveEdgeForQualityIncrease,
+                AdaptiveTrackSelection.DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS,
+                Clock.DEFAULT);
+        DefaultTrackSelector trackSelector = new DefaultTrackSelector(localFactory);
+        // Renderers already drop formats their codec's decoder cannot play, this only keeps ABR
+        // away from sizes no decoder of the device supports, secure ones for protected content.
+        DeviceCapabilities capabilities = DeviceCapabilities.get(getContext());
+        DeviceCapabilities.VideoLimits videoLimits = capabilities != null
+                ? capabilities.getLargestVideoLimits(drmUUID != null) : null;
+        if (videoLimits != null) {
+            trackSelector.setParameters(trackSelector.getParameters().buildUpon()
+                    .setMaxVideoSize(videoLimits.maxWidth, videoLimits.maxHeight)
+                    .build());
+        }
+        return trackSelector;
+    }
+
+    /**
+     * Connects a newly created or adopted player to this view and applies the current props.
+     */
+    private void attachPlayer() {
+        mSharedBandwidthMeter.setActive(true);
+        player.addListener(this);
+        player.addMetadataOutput(this);
+        exoPlayerView.setPlayer(player);
+        applyDecoderGrant();
+        if (inDecoderBudget) {
+            // An adopted player may come with a codec.
+            DecoderBudget.getInstance().invalidate();
+        }
+        audioBecomingNoisyReceiver.setListener(this);
+        setPlayWhenReady(!isPaused);
+
+        PlaybackParameters params = new PlaybackParameters(rate, 1f);
+        liveCatchUpSpeed = 1f;
+        player.setPlaybackParameters(params);
+        player.setVideoScalingMode(C.VIDEO_SCALING_MODE_SCALE_TO_FIT_WITH_CROPPING);
+        player.setRepeatMode(repeat? Player.REPEAT_MODE_ONE: Player.REPEAT_MODE_OFF);
+    }
+
+    /**
+     * Swaps {@code detachedPlayer} in for the current player if it plays the current source,
+     * releases it otherwise.
+     *
+     * @param preloaded Whether it comes from the zap preloader rather than the player registry.
+     * @return Whether the player was adopted.
+     */
+    private boolean adoptDetachedPlayer(@Nullable DetachedPlayer detachedPlayer, boolean preloaded) {
+        if (detachedPlayer == null) {
+            return false;
+        }
+        if (!detachedPlayer.uri.equals(srcUri)
+                || detachedPlayer.player.getPlaybackState() == ExoPlayer.STATE_IDLE) {
+            // Kept for another source or failed while detached, loading again reports the error.
+            detachedPlayer.release();
+            return false;
+        }
+        // Its codec, if any, counts as this view's from now on.
+        DecoderBudget.getInstance().remove(detachedPlayer);
+        startupTracer.setPreloaded();
+        startupTracer.mark(StartupTracer.MILESTONE_PREPARE);
+        releasePlayer();
+        themedReactContext.addLifecycleEventListener(this);
+        bandwidthNetworkKey = BandwidthEstimateStore.getInstance(getContext()).getNetworkKey();
+        // Its track selection and loading media source use the meter it was built with.
+        mBandwidthMeter = detachedPlayer.bandwidthMeter;
+        mSharedBandwidthMeter = detachedPlayer.sharedBandwidthMeter;
+        mChunkSourceFactory = buildChunkSourceFactory(mSharedBandwidthMeter, transferLog);
+        player = detachedPlayer.player;
+        trackSelector = detachedPlayer.trackSelector;
+        loadControl = detachedPlayer.loadControl;
+        drmLease = detachedPlayer.drmLease;
+        drmTimings = detachedPlayer.drmTimings;
+        segmentCacheLease = detachedPlayer.segmentCacheLease;
+        segmentPrefetcher = detachedPlayer.segmentPrefetcher;
+        playerEventRelay = detachedPlayer.eventRelay;
+        playerEventRelay.setTarget(this, this, mediaSourceEventListener);
+        if (drmLease != null) {
+            drmLease.setRenewalLeadTimeMs(drmRenewalLeadTimeMs);
+        }
+        if (preloaded) {
+            // From the preload budget back to the playback buffer.
+            loadControl.setTargetBuffer(TARGET_BUFFER_BYTES, true);
+        }
+        loadControl.setBufferDurationsMs(minBufferMs, maxBufferMs, mBufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs);
+        attachPlayer();
+        setMaxBitrate(mMaxBitrate.intValue());
+        // The player keeps its own position.
+        clearResumePosition();
+        playerNeedsSource = false;
+        eventEmitter.loadStart();
+        loadVideoStarted = true;
+        onPlayerStateChanged(player.getPlayWhenReady(), player.getPlaybackState());
+        return true;
+    }
+
+    /**
+     * Hands the player over to the player registry instead of releasing it, paused and without
+     * surface, for a view mounted with the same key to continue it.
+     */
+    private void parkPlayer() {
+        storeBandwidthEstimate();
+        player.setPlayWhenReady(false);
+        player.removeListener(this);
+        player.removeMetadataOutput(this);
+        exoPlayerView.setPlayer(null);
+        playerEventRelay.setTarget(null, null, null);
+        mSharedBandwidthMeter.setActive(false);
+
+        DetachedPlayer detachedPlayer = new DetachedPlayer(srcUri);
+        detachedPlayer.player = player;
+        detachedPlayer.trackSelector = trackSelector;
+        detachedPlayer.loadControl = loadControl;
+        detachedPlayer.drmLease = drmLease;
+        detachedPlayer.drmTimings = drmTimings;
+        detachedPlayer.segmentCacheLease = segmentCacheLease;
+        detachedPlayer.segmentPrefetcher = segmentPrefetcher;
+        detachedPlayer.eventRelay = playerEventRelay;
+        detachedPlayer.bandwidthMeter = mBandwidthMeter;
+        detachedPlayer.sharedBandwidthMeter = mSharedBandwidthMeter;
+        if (inDecoderBudget) {
+            // Releases its codec, counted against the cap until the player reports it released.
+            detachedPlayer.onDecoderGranted(false);
+            DecoderBudget.getInstance().add(detachedPlayer);
+        }
+        PlayerRegistry.getInstance().park(playerKey, detachedPlayer, playerGracePeriodMs);
+        initBandwidthMeter();
+
+        player = null;
+        trackSelector = null;
+        loadControl = null;
+        drmLease = null;
+        segmentCacheLease = null;
+        segmentPrefetcher = null;
+        playerEventRelay = null;
+        releasePlayer();
+    }
+
+    /**
+     * Prepares a surface-less player with {@code uri} in the background, replacing the previous
+     * preload.
+     */
+    private void preload(Uri uri) {
+        DetachedPlayer preload = new DetachedPlayer(uri);
+        // Without target until adopted.
+        preload.eventRelay = new PlayerEventRelay();
+        DrmSessionManager<FrameworkMediaCrypto> drmSessionManager = null;
+        if (this.drmUUID != null) {
+            try {
+                preload.drmTimings = new DrmTimings();
+                preload.drmLease = acquireDrmLease(preload.drmTimings, preload.eventRelay);
+                drmSessionManager = preload.drmLease.getSessionManager();
+            } catch (UnsupportedDrmException e) {
+                Log.w(TAG, "Not preloading " + uri, e);
+                return;
+            }
+        }
+        if (segmentCacheMaxBytes > 0) {
+            preload.segmentCacheLease = SegmentCache.getInstance(getContext()).acquire(segmentCacheMaxBytes);
+        }
+        // A meter of its own, so its transfers do not count as the playing player's, competing
+        // for bandwidth with the players loading while it does.
+        preload.bandwidthMeter = new DefaultBandwidthMeter(mainHandler, null, mBandwidthMeterMaxWeight);
+        preload.sharedBandwidthMeter = SharedBandwidthMeter.getInstance().newParticipant(preload.bandwidthMeter);
+        preload.sharedBandwidthMeter.setActive(true);
+        preload.trackSelector = buildTrackSelector(preload.sharedBandwidthMeter,
+                BandwidthEstimateStore.getInstance(getContext()).getNetworkKey());
+        preload.trackSelector.setParameters(preload.trackSelector.getParameters().buildUpon()
+                .setMaxVideoBitrate(mMaxBitrate.intValue()).build());
+        preload.loadControl = new ConfigurableLoadControl(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                preloadMaxBufferMs,
+                preloadMaxBufferMs,
+                mBufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs,
+                preloadMaxBytes,
+                false);
+        DefaultRenderersFactory renderersFactory = new DefaultRenderersFactory(getContext(),
+                drmSessionManager, DefaultRenderersFactory.EXTENSION_RENDERER_MODE_OFF);
+        preload.player = ExoPlayerFactory.newSimpleInstance(renderersFactory, preload.trackSelector,
+                preload.loadControl);
+        preload.player.addVideoDebugListener(preload.eventRelay);
+        preload.visibleFraction = DetachedPlayer.PRELOAD_VISIBLE_FRACTION;
+        preload.player.setPlayWhenReady(false);
+        try {
+            preload.player.prepare(buildPreloadMediaSource(uri, preload));
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Not preloading " + uri, e);
+            preload.release();
+            return;
+        }
+        zapPreloader.set(preload);
+    }
+
     public void setMaxBitrate(int bitrate) {
         if (bitrate == 0) {
             mMaxBitrate.set(Integer.MAX_VALUE);
@@ -413,10 +721,34 @@ class ReactExoplayerView extends FrameLayout implements
     }
 
     private DrmSessionManager<FrameworkMediaCrypto> buildDrmSessionManager() throws UnsupportedDrmException {
-        DrmHttpDataSourceFactory httpDataSourceFactory = new DrmHttpDataSourceFactory("sctv", null);
+        drmTimings = new DrmTimings();
+        releaseDrmLease();
+        drmLease = acquireDrmLease(drmTimings, playerEventRelay);
+        return drmLease.getSessionManager();
+    }
+
+    private DrmSessionManagerPool.Lease acquireDrmLease(DrmTimings timings,
+                                                        DefaultDrmSessionManager.EventListener listener)
+            throws UnsupportedDrmException {
+        DeviceCapabilities capabilities = DeviceCapabilities.get(getContext());
+        if (C.WIDEVINE_UUID.equals(this.drmUUID) && capabilities != null
+                && !capabilities.isWidevineSupported()) {
+            throw new UnsupportedDrmException(UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME);
+        }
+        HttpDataSource.Factory httpDataSourceFactory = DataSourceUtil.getDrmHttpDataSourceFactory(drmTransport);
         LatensMediaDrmCallback drmCallback = new LatensMediaDrmCallback(this.drmLicenseUrl, deviceId, customerId, httpDataSourceFactory);
-        FrameworkMediaDrm mediaDrm = FrameworkMediaDrm.newInstance(this.drmUUID);
-        return new DefaultDrmSessionManager<>(this.drmUUID, mediaDrm, drmCallback, null, mainHandler, this);
+        drmCallback.setTimings(timings);
+        DrmSessionManagerPool.Lease lease = DrmSessionManagerPool.acquire(themedReactContext, this.drmUUID,
+                this.drmLicenseUrl, drmCallback, mainHandler, listener);
+        lease.setRenewalLeadTimeMs(drmRenewalLeadTimeMs);
+        return lease;
+    }
+
+    private void releaseDrmLease() {
+        if (drmLease != null) {
+            drmLease.release();
+            drmLease = null;
+        }
     }
 
     public int inferContentType(Uri uri) {
@@ -440,12 +772,25 @@ class ReactExoplayerView extends FrameLayout implements
         @C.ContentType int type = inferContentType(uri);
         switch (type) {
             case C.TYPE_DASH:
+                DataSource.Factory chunkSourceFactory = mChunkSourceFactory;
+                releaseSegmentPrefetcher();
+                if (segmentPrefetchCount > 0) {
+                    segmentPrefetcher = new SegmentPrefetcher(mChunkSourceFactory,
+                            segmentPrefetchCount, segmentPrefetchMaxBytes);
+                    chunkSourceFactory = segmentPrefetcher.wrap(chunkSourceFactory);
+                }
+                if (segmentCacheLease != null) {
+                    chunkSourceFactory = segmentCacheLease.wrap(chunkSourceFactory,
+                            segmentCacheIgnoredQueryParameters);
+                }
                 DashMediaSource.Factory localFactory =
-                        new DashMediaSource.Factory(new DefaultDashChunkSource.Factory(mChunkSourceFactory), mMediaDataSourceFactory);
-                localFactory.setLivePresentationDelayMs(10000L);
-                return localFactory.createMediaSource(uri, mainHandler, null);
+                        new DashMediaSource.Factory(new DefaultDashChunkSource.Factory(chunkSourceFactory), mManifestDataSourceFactory);
+                localFactory.setLivePresentationDelayMs(liveTargetLatencyMs > 0 ? liveTargetLatencyMs : 10000L);
+                localFactory.setManifestParser(new ReusingDashManifestParser(playerEventRelay, cdnFailover));
+                return localFactory.createMediaSource(uri, mainHandler, playerEventRelay);
             case C.TYPE_OTHER:
-                return new ExtractorMediaSource.Factory(mMediaDataSourceFactory).createMediaSource(uri);
+                return new ExtractorMediaSource.Factory(mMediaDataSourceFactory).createMediaSource(uri,
+                        mainHandler, playerEventRelay);
             case C.TYPE_SS: /*unsupported for now*/
             case C.TYPE_HLS: /*unsupported for now*/
             default: {
@@ -454,19 +799,119 @@ class ReactExoplayerView extends FrameLayout implements
         }
     }
 
+    /**
+     * Like {@link #buildMediaSource} without the segment prefetcher, which follows the current
+     * source. Events go to the relay of the preload, segments are measured by its bandwidth meter
+     * and are not recorded in the transfer log.
+     */
+    private MediaSource buildPreloadMediaSource(Uri uri, DetachedPlayer preload) {
+        @C.ContentType int type = inferContentType(uri);
+        switch (type) {
+            case C.TYPE_DASH:
+                DataSource.Factory chunkSourceFactory = buildChunkSourceFactory(
+                        preload.sharedBandwidthMeter, null);
+                if (preload.segmentCacheLease != null) {
+                    chunkSourceFactory = preload.segmentCacheLease.wrap(chunkSourceFactory,
+                            segmentCacheIgnoredQueryParameters);
+                }
+                DashMediaSource.Factory localFactory =
+                        new DashMediaSource.Factory(new DefaultDashChunkSource.Factory(chunkSourceFactory), mManifestDataSourceFactory);
+                localFactory.setLivePresentationDelayMs(liveTargetLatencyMs > 0 ? liveTargetLatencyMs : 10000L);
+                localFactory.setManifestParser(new ReusingDashManifestParser(preload.eventRelay, cdnFailover));
+                return localFactory.createMediaSource(uri, mainHandler, preload.eventRelay);
+            case C.TYPE_OTHER:
+                return new ExtractorMediaSource.Factory(mMediaDataSourceFactory).createMediaSource(uri,
+                        mainHandler, preload.eventRelay);
+            default: {
+                throw new IllegalStateException("Unsupported type: " + type);
+            }
+        }
+    }
+
     private void releasePlayer() {
         if (player != null) {
+            storeBandwidthEstimate();
             updateResumePosition();
             player.release();
             player.setMetadataOutput(null);
             player = null;
             trackSelector = null;
+            loadControl = null;
+            playerEventRelay = null;
+            mSharedBandwidthMeter.setActive(false);
+            if (inDecoderBudget) {
+                // Released with the player.
+                DecoderBudget.getInstance().invalidate();
+            }
         }
+        releaseDrmLease();
+        if (segmentCacheLease != null) {
+            segmentCacheLease.release();
+            segmentCacheLease = null;
+        }
+        releaseSegmentPrefetcher();
         progressHandler.removeMessages(SHOW_PROGRESS);
         themedReactContext.removeLifecycleEventListener(this);
         audioBecomingNoisyReceiver.removeListener();
     }
 
+    /**
+     * Returns how far playback is behind the live edge by the device clock, or
+     * {@link C#TIME_UNSET} when not playing a live stream.
+     */
+    private long getLiveLatencyMs() {
+        Timeline timeline = player.getCurrentTimeline();
+        if (timeline.isEmpty()) {
+            return C.TIME_UNSET;
+        }
+        timeline.getWindow(player.getCurrentWindowIndex(), window);
+        if (!window.isDynamic || window.windowStartTimeMs == C.TIME_UNSET) {
+            return C.TIME_UNSET;
+        }
+        return System.currentTimeMillis() - (window.windowStartTimeMs + player.getCurrentPosition());
+    }
+
+    /**
+     * Adjusts the playback speed towards the target latency, returns the catch-up state or null if
+     * catch-up is disabled.
+     */
+    private String updateLiveCatchUp(long liveLatencyMs) {
+        // An app chosen rate takes precedence.
+        if (liveCatchUpController == null || rate != 1f) {
+            return null;
+        }
+        float speed = liveCatchUpController.getSpeed(liveLatencyMs);
+        if (Math.abs(speed - liveCatchUpSpeed) > 0.005f) {
+            liveCatchUpSpeed = speed;
+            player.setPlaybackParameters(new PlaybackParameters(speed, 1f));
+        }
+        return liveCatchUpController.getState();
+    }
+
+    private void maybeEmitTransferLog() {
+        long nowMs = SystemClock.elapsedRealtime();
+        if (transferLogUpdateInterval > 0 && !transferLog.isEmpty()
+                && nowMs - lastTransferLogEventMs >= transferLogUpdateInterval) {
+            lastTransferLogEventMs = nowMs;
+            eventEmitter.transferLog(transferLog);
+        }
+    }
+
+    private void storeBandwidthEstimate() {
+        BandwidthEstimateStore estimateStore = BandwidthEstimateStore.getInstance(getContext());
+        // An estimate spanning a network change belongs to neither network.
+        if (bandwidthNetworkKey != null && bandwidthNetworkKey.equals(estimateStore.getNetworkKey())) {
+            estimateStore.putEstimate(bandwidthNetworkKey, mBandwidthMeter.getBitrateEstimate());
+        }
+    }
+
+    private void releaseSegmentPrefetcher() {
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.release();
+            segmentPrefetcher = null;
+        }
+    }
+
     private boolean requestAudioFocus() {
         if (disableFocus) {
             return true;
@@ -482,7 +927,8 @@ class ReactExoplayerView extends FrameLayout implements
             return;
         }
 
-        if (playWhenReady) {
+        // A player without decoder waits paused for one, unless it only plays audio.
+        if (playWhenReady && (decoderGranted || !needsVideoDecoder())) {
             boolean hasAudioFocus = requestAudioFocus();
             if (hasAudioFocus) {
                 player.setPlayWhenReady(true);
@@ -492,6 +938,19 @@ class ReactExoplayerView extends FrameLayout implements
         }
     }
 
+    /**
+     * Whether the source has video tracks, assumed until its tracks are known.
+     */
+    private boolean needsVideoDecoder() {
+        int rendererIndex = getTrackRendererIndex(C.TRACK_TYPE_VIDEO);
+        if (rendererIndex == C.INDEX_UNSET) {
+            return false;
+        }
+        // Mapped regardless of the renderer being disabled for lack of decoder.
+        MappingTrackSelector.MappedTrackInfo info = trackSelector.getCurrentMappedTrackInfo();
+        return info == null || info.getTrackGroups(rendererIndex).length > 0;
+    }
+
     private void startPlayback() {
         if (player != null) {
             switch (player.getPlaybackState()) {
@@ -529,6 +988,7 @@ class ReactExoplayerView extends FrameLayout implements
     private void stopPlayback() {
         onStopPlayback();
         releasePlayer();
+        zapPreloader.clear();
     }
 
     private void onStopPlayback() {
@@ -602,6 +1062,7 @@ class ReactExoplayerView extends FrameLayout implements
                 break;
             case ExoPlayer.STATE_READY:
                 text += "ready";
+                startupTracer.mark(StartupTracer.MILESTONE_READY);
                 eventEmitter.ready();
                 onBuffering(false);
                 startProgressHandler();
@@ -731,11 +1192,18 @@ class ReactExoplayerView extends FrameLayout implements
 
     @Override
     public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
-        // Do Nothing.
+        if (!decoderGranted) {
+            // Audio only sources play without decoder.
+            setPlayWhenReady(!isPaused);
+        }
     }
 
     @Override
     public void onPlaybackParametersChanged(PlaybackParameters params) {
+        // Catch-up speed adjustments are reported in progress events instead.
+        if (liveCatchUpController != null && params.speed != rate) {
+            return;
+        }
         eventEmitter.playbackRateChange(params.speed);
     }
 
@@ -831,12 +1299,31 @@ class ReactExoplayerView extends FrameLayout implements
         eventEmitter.timedMetadata(metadata);
     }
 
+    @Override
+    public void onManifestParsed(DashManifest manifest, final long parseTimeMs, final int sizeBytes,
+                                 final boolean reused) {
+        startupTracer.mark(StartupTracer.MILESTONE_MANIFEST_LOADED);
+        SegmentPrefetcher segmentPrefetcher = this.segmentPrefetcher;
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.setManifest(manifest);
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                eventEmitter.manifestParsed(parseTimeMs, sizeBytes, reused);
+            }
+        });
+    }
+
     // ReactExoplayerViewManager public api
 
     public void setSrc(final Uri uri, final String extension, Map<String, String> headers) {
         if (uri != null) {
             boolean isOriginalSourceNull = srcUri == null;
             boolean isSourceEqual = uri.equals(srcUri);
+            if (!isSourceEqual) {
+                startupTracer.start();
+            }
 
             this.srcUri = uri;
             this.extension = extension;
@@ -856,6 +1343,9 @@ class ReactExoplayerView extends FrameLayout implements
         if (uri != null) {
             boolean isOriginalSourceNull = srcUri == null;
             boolean isSourceEqual = uri.equals(srcUri);
+            if (!isSourceEqual) {
+                startupTracer.start();
+            }
 
             this.srcUri = uri;
             this.extension = extension;
@@ -1018,12 +1508,16 @@ class ReactExoplayerView extends FrameLayout implements
     public void seekTo(long positionMs) {
         if (player != null) {
             eventEmitter.seek(player.getCurrentPosition(), positionMs);
+            if (segmentPrefetcher != null) {
+                segmentPrefetcher.cancelAll();
+            }
             player.seekTo(positionMs);
         }
     }
 
     public void setRateModifier(float newRate) {
         rate = newRate;
+        liveCatchUpSpeed = 1f;
 
         if (player != null) {
             PlaybackParameters params = new PlaybackParameters(rate, 1f);
@@ -1032,6 +1526,19 @@ class ReactExoplayerView extends FrameLayout implements
     }
 
 
+    /**
+     * Sets the latency to hold live streams at, applied to sources set afterwards. 0 restores the
+     * default 10 s presentation delay without catch-up.
+     */
+    public void setLiveTargetLatency(long targetLatencyMs) {
+        this.liveTargetLatencyMs = targetLatencyMs;
+        liveCatchUpController = targetLatencyMs > 0 ? new LiveCatchUpController(targetLatencyMs) : null;
+        if (liveCatchUpController == null && liveCatchUpSpeed != 1f && player != null) {
+            liveCatchUpSpeed = 1f;
+            player.setPlaybackParameters(new PlaybackParameters(rate, 1f));
+        }
+    }
+
     public void setPlayInBackground(boolean playInBackground) {
         this.playInBackground = playInBackground;
     }
@@ -1044,26 +1551,27 @@ class ReactExoplayerView extends FrameLayout implements
      * @param drmName
      */
     public void setDrmName(String drmName) throws ParserException {
+        try {
+            this.drmUUID = parseDrmUuid(drmName);
+        } catch (RuntimeException e) {
+            String errorString = "Unsupported drm type: " + drmName;
+            eventEmitter.error(errorString, e);
+            throw new ParserException(errorString);
+        }
+        Log.d("setDrmLicenseUrl", drmName);
+    }
+
+    static UUID parseDrmUuid(String drmName) {
         switch (Util.toLowerInvariant(drmName)) {
             case "widevine":
-                this.drmUUID = C.WIDEVINE_UUID;
-                break;
+                return C.WIDEVINE_UUID;
             case "playready":
-                this.drmUUID = C.PLAYREADY_UUID;
-                break;
+                return C.PLAYREADY_UUID;
             case "cenc":
-                this.drmUUID = C.CLEARKEY_UUID;
-                break;
+                return C.CLEARKEY_UUID;
             default:
-                try {
-                    this.drmUUID = UUID.fromString(drmName);
-                } catch (RuntimeException e) {
-                    String errorString = "Unsupported drm type: " + drmName;
-                    eventEmitter.error(errorString, e);
-                    throw new ParserException(errorString);
-                }
+                return UUID.fromString(drmName);
         }
-        Log.d("setDrmLicenseUrl", drmName);
     }
 
     public void setDrmLicenseUrl(String licenseUrl) {
@@ -1076,9 +1584,207 @@ class ReactExoplayerView extends FrameLayout implements
         this.drmLicenseHeader = header;
     }
 
+    public void setDrmTransport(String drmTransport) {
+        this.drmTransport = drmTransport;
+    }
+
+    /**
+     * Enables the on-disk segment cache for players created afterwards, 0 disables it.
+     */
+    public void setSegmentCache(long maxBytes, Set<String> ignoredQueryParameters) {
+        this.segmentCacheMaxBytes = maxBytes;
+        this.segmentCacheIgnoredQueryParameters = ignoredQueryParameters;
+    }
+
+    /**
+     * Enables prefetching of the next {@code count} DASH VOD segments for sources set afterwards,
+     * 0 disables it.
+     */
+    public void setSegmentPrefetch(int count, long maxBytes) {
+        this.segmentPrefetchCount = count;
+        this.segmentPrefetchMaxBytes = maxBytes;
+    }
+
+    /**
+     * Emits the transfers recorded since the last event at most every {@code intervalMs} during
+     * playback, 0 disables the event.
+     */
+    public void setTransferLogUpdateInterval(long intervalMs) {
+        this.transferLogUpdateInterval = intervalMs;
+    }
+
+    /**
+     * Sets base urls serving the same content, requests fail over between them.
+     */
+    public void setCdnBaseUrls(List<String> baseUrls) {
+        cdnFailover.setBaseUrls(baseUrls);
+    }
+
+    public void setPreloadSrc(@Nullable final Uri uri) {
+        // Posted so that a source change in the same update adopts the previous preload first.
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (uri == null) {
+                    zapPreloader.clear();
+                } else if (!uri.equals(srcUri) && !uri.equals(zapPreloader.getUri())) {
+                    preload(uri);
+                }
+            }
+        });
+    }
+
+    public void setPreloadConfig(int maxBufferMs, int maxBytes, long maxAgeMs) {
+        preloadMaxBufferMs = maxBufferMs;
+        preloadMaxBytes = maxBytes;
+        zapPreloader.setMaxAgeMs(maxAgeMs);
+    }
+
+    public void setPlayerKey(@Nullable String playerKey) {
+        this.playerKey = playerKey;
+    }
+
+    public void setDecoderBudget(boolean enabled, int maxActiveDecoders) {
+        decoderBudgetEnabled = enabled;
+        if (enabled) {
+            DecoderBudget.getInstance().setMaxActiveDecoders(maxActiveDecoders);
+            if (ViewCompat.isAttachedToWindow(this)) {
+                joinDecoderBudget();
+            }
+        } else {
+            leaveDecoderBudget();
+        }
+    }
+
+    public void setPlayerKeepAlive(long gracePeriodMs, int maxIdlePlayers) {
+        playerGracePeriodMs = gracePeriodMs;
+        PlayerRegistry.getInstance().setMaxIdlePlayers(maxIdlePlayers);
+    }
+
+    public void setDrmRenewalLeadTimeMs(long drmRenewalLeadTimeMs) {
+        this.drmRenewalLeadTimeMs = drmRenewalLeadTimeMs;
+        if (drmLease != null) {
+            drmLease.setRenewalLeadTimeMs(drmRenewalLeadTimeMs);
+        }
+    }
+
+    @Override
+    public void onRenderedFirstFrame() {
+        if (startupTracer.mark(StartupTracer.MILESTONE_FIRST_FRAME)) {
+            eventEmitter.startupTrace(startupTracer);
+        }
+        if (awaitingGrantedFirstFrame) {
+            awaitingGrantedFirstFrame = false;
+            eventEmitter.decoderGrantChanged(true);
+        }
+    }
+
+    // DecoderBudget.Member implementation
+
+    @Override
+    public float getVisibleFraction() {
+        return visibleFraction;
+    }
+
+    @Override
+    public void onDecoderGranted(boolean granted) {
+        decoderGranted = granted;
+        // Reported once the decoder shows something, until then the poster is kept.
+        awaitingGrantedFirstFrame = granted;
+        if (!granted) {
+            eventEmitter.decoderGrantChanged(false);
+        }
+        if (player != null) {
+            applyDecoderGrant();
+            setPlayWhenReady(!isPaused);
+        }
+    }
+
+    @Override
+    public boolean holdsDecoder() {
+        return playerEventRelay != null && playerEventRelay.isVideoDecoderEnabled();
+    }
+
+    /**
+     * Enables the video renderer if this view has a decoder. Disabling it releases the codec while
+     * the player keeps its source, DRM session and audio buffer; the budget counts the codec until
+     * the player reports the renderer disabled.
+     */
+    private void applyDecoderGrant() {
+        int rendererIndex = getTrackRendererIndex(C.TRACK_TYPE_VIDEO);
+        if (rendererIndex != C.INDEX_UNSET) {
+            trackSelector.setRendererDisabled(rendererIndex, !decoderGranted);
+        }
+    }
+
+    private void joinDecoderBudget() {
+        if (inDecoderBudget) {
+            return;
+        }
+        inDecoderBudget = true;
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnScrollChangedListener(visibilityListener);
+        observer.addOnGlobalLayoutListener(visibilityListener);
+        updateVisibleFraction();
+        // Until the budget assigns a decoder.
+        onDecoderGranted(false);
+        DecoderBudget.getInstance().add(this);
+        zapPreloader.setInDecoderBudget(true);
+    }
+
+    private void leaveDecoderBudget() {
+        if (!inDecoderBudget) {
+            return;
+        }
+        inDecoderBudget = false;
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.removeOnScrollChangedListener(visibilityListener);
+        observer.removeOnGlobalLayoutListener(visibilityListener);
+        DecoderBudget.getInstance().remove(this);
+        zapPreloader.setInDecoderBudget(false);
+        decoderGranted = true;
+        awaitingGrantedFirstFrame = false;
+        if (player != null) {
+            applyDecoderGrant();
+            setPlayWhenReady(!isPaused);
+        }
+    }
+
+    private void updateVisibleFraction() {
+        float fraction = 0;
+        long area = (long) getWidth() * getHeight();
+        if (area > 0 && isShown() && getGlobalVisibleRect(visibleRect)) {
+            fraction = (float) ((long) visibleRect.width() * visibleRect.height()) / area;
+        }
+        // Small changes while scrolling do not change the ranking enough to matter.
+        if (Math.abs(fraction - visibleFraction) >= 0.05f || (fraction == 0) != (visibleFraction == 0)) {
+            visibleFraction = fraction;
+            DecoderBudget.getInstance().invalidate();
+        }
+    }
+
+    private final class VisibilityListener implements ViewTreeObserver.OnScrollChangedListener,
+            ViewTreeObserver.OnGlobalLayoutListener {
+
+        @Override
+        public void onScrollChanged() {
+            updateVisibleFraction();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            updateVisibleFraction();
+        }
+    }
+
     @Override
     public void onDrmKeysLoaded() {
         Log.d("DRM Info", "onDrmKeysLoaded");
+        startupTracer.mark(StartupTracer.MILESTONE_DRM_KEYS_LOADED);
+        if (drmTimings != null) {
+            drmTimings.onKeysLoaded();
+            eventEmitter.drmTimings(drmTimings);
+        }
     }
 
     @Override
@@ -1140,7 +1846,10 @@ class ReactExoplayerView extends FrameLayout implements
         maxBufferMs = newMaxBufferMs;
         mBufferForPlaybackMs = newBufferForPlaybackMs;
         bufferForPlaybackAfterRebufferMs = newBufferForPlaybackAfterRebufferMs;
-        releasePlayer();
-        initializePlayer();
+        // Applied in place, rebuilding the player would tear down its codecs and DRM session.
+        if (loadControl != null) {
+            loadControl.setBufferDurationsMs(minBufferMs, maxBufferMs, mBufferForPlaybackMs,
+                    bufferForPlaybackAfterRebufferMs);
+        }
     }
 }
@@ -5,6 +5,7 @@ import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.brentvatne.exoplayer.cache.SegmentCache;
 import com.facebook.react.bridge.Dynamic;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
@@ -18,7 +19,10 @@ import com.google.android.exoplayer2.upstream.RawResourceDataSource;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -49,7 +53,27 @@ public class ReactExoplayerViewManager extends ViewGroupManager<ReactExoplayerVi
     private static final String PROP_BUFFER_CONFIG_MAX_BUFFER_MS = "maxBufferMs";
     private static final String PROP_BUFFER_CONFIG_BUFFER_FOR_PLAYBACK_MS = "bufferForPlaybackMs";
     private static final String PROP_BUFFER_CONFIG_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = "bufferForPlaybackAfterRebufferMs";
+    private static final String PROP_SEGMENT_CACHE = "segmentCache";
+    private static final String PROP_SEGMENT_CACHE_MAX_BYTES = "maxBytes";
+    private static final String PROP_SEGMENT_CACHE_IGNORED_QUERY_PARAMETERS = "ignoredQueryParameters";
+    private static final String PROP_SEGMENT_PREFETCH = "segmentPrefetch";
+    private static final String PROP_CDN_BASE_URLS = "cdnBaseUrls";
+    private static final String PROP_SEGMENT_PREFETCH_COUNT = "count";
+    private static final String PROP_SEGMENT_PREFETCH_MAX_BYTES = "maxBytes";
     private static final String PROP_PROGRESS_UPDATE_INTERVAL = "progressUpdateInterval";
+    private static final String PROP_TRANSFER_LOG_UPDATE_INTERVAL = "transferLogUpdateInterval";
+    private static final String PROP_LIVE_TARGET_LATENCY = "liveTargetLatency";
+    private static final String PROP_PRELOAD_SRC = "preloadSrc";
+    private static final String PROP_PRELOAD_CONFIG = "preloadConfig";
+    private static final String PROP_PRELOAD_CONFIG_MAX_BUFFER_MS = "maxBufferMs";
+    private static final String PROP_PRELOAD_CONFIG_MAX_BYTES = "maxBytes";
+    private static final String PROP_PRELOAD_CONFIG_MAX_AGE_MS = "maxAgeMs";
+    private static final String PROP_PLAYER_KEY = "playerKey";
+    private static final String PROP_PLAYER_KEEP_ALIVE = "playerKeepAlive";
+    private static final String PROP_PLAYER_KEEP_ALIVE_GRACE_PERIOD_MS = "gracePeriodMs";
+    private static final String PROP_PLAYER_KEEP_ALIVE_MAX_IDLE_PLAYERS = "maxIdlePlayers";
+    private static final String PROP_DECODER_BUDGET = "decoderBudget";
+    private static final String PROP_DECODER_BUDGET_MAX_ACTIVE_DECODERS = "maxActiveDecoders";
     private static final String PROP_SEEK = "seek";
     private static final String PROP_RATE = "rate";
     private static final String PROP_PLAY_IN_BACKGROUND = "playInBackground";
@@ -57,6 +81,8 @@ public class ReactExoplayerViewManager extends ViewGroupManager<ReactExoplayerVi
     private static final String PROP_DRM_LICENSE_URL = "licenseUrl";
     private static final String PROP_DRM_LICENSE_HEADER = "drmHeader";
     private static final String PROP_DRM_TYPE = "drmType";
+    private static final String PROP_DRM_TRANSPORT = "drmTransport";
+    private static final String PROP_DRM_RENEWAL_LEAD_TIME_MS = "drmRenewalLeadTimeMs";
     private static final String PROP_FULLSCREEN = "fullscreen";
     private static final String PROP_USE_TEXTURE_VIEW = "useTextureView";
 
@@ -200,6 +226,16 @@ public class ReactExoplayerViewManager extends ViewGroupManager<ReactExoplayerVi
         videoView.setProgressUpdateInterval(progressUpdateInterval);
     }
 
+    @ReactProp(name = PROP_LIVE_TARGET_LATENCY, defaultFloat = 0.0f)
+    public void setLiveTargetLatency(final ReactExoplayerView videoView, final float liveTargetLatency) {
+        videoView.setLiveTargetLatency(Math.round(liveTargetLatency));
+    }
+
+    @ReactProp(name = PROP_TRANSFER_LOG_UPDATE_INTERVAL, defaultFloat = 0.0f)
+    public void setTransferLogUpdateInterval(final ReactExoplayerView videoView, final float transferLogUpdateInterval) {
+        videoView.setTransferLogUpdateInterval(Math.round(transferLogUpdateInterval));
+    }
+
     @ReactProp(name = PROP_SEEK)
     public void setSeek(final ReactExoplayerView videoView, final float seek) {
         videoView.seekTo(Math.round(seek * 1000f));
@@ -249,6 +285,96 @@ public class ReactExoplayerViewManager extends ViewGroupManager<ReactExoplayerVi
         }
     }
 
+    @ReactProp(name = PROP_SEGMENT_CACHE)
+    public void setSegmentCache(final ReactExoplayerView videoView, @Nullable ReadableMap segmentCache) {
+        long maxBytes = 0;
+        Set<String> ignoredQueryParameters = SegmentCache.DEFAULT_IGNORED_QUERY_PARAMETERS;
+        if (segmentCache != null) {
+            maxBytes = segmentCache.hasKey(PROP_SEGMENT_CACHE_MAX_BYTES)
+                    ? (long) segmentCache.getDouble(PROP_SEGMENT_CACHE_MAX_BYTES) : maxBytes;
+            if (segmentCache.hasKey(PROP_SEGMENT_CACHE_IGNORED_QUERY_PARAMETERS)) {
+                ReadableArray parameters = segmentCache.getArray(PROP_SEGMENT_CACHE_IGNORED_QUERY_PARAMETERS);
+                ignoredQueryParameters = new HashSet<>();
+                for (int i = 0; i < parameters.size(); i++) {
+                    ignoredQueryParameters.add(parameters.getString(i));
+                }
+            }
+        }
+        videoView.setSegmentCache(maxBytes, ignoredQueryParameters);
+    }
+
+    @ReactProp(name = PROP_CDN_BASE_URLS)
+    public void setCdnBaseUrls(final ReactExoplayerView videoView, @Nullable ReadableArray cdnBaseUrls) {
+        List<String> baseUrls = new ArrayList<>();
+        if (cdnBaseUrls != null) {
+            for (int i = 0; i < cdnBaseUrls.size(); i++) {
+                baseUrls.add(cdnBaseUrls.getString(i));
+            }
+        }
+        videoView.setCdnBaseUrls(baseUrls);
+    }
+
+    @ReactProp(name = PROP_SEGMENT_PREFETCH)
+    public void setSegmentPrefetch(final ReactExoplayerView videoView, @Nullable ReadableMap segmentPrefetch) {
+        int count = 0;
+        long maxBytes = 16 * 1024 * 1024;
+        if (segmentPrefetch != null) {
+            count = segmentPrefetch.hasKey(PROP_SEGMENT_PREFETCH_COUNT)
+                    ? segmentPrefetch.getInt(PROP_SEGMENT_PREFETCH_COUNT) : count;
+            maxBytes = segmentPrefetch.hasKey(PROP_SEGMENT_PREFETCH_MAX_BYTES)
+                    ? (long) segmentPrefetch.getDouble(PROP_SEGMENT_PREFETCH_MAX_BYTES) : maxBytes;
+        }
+        videoView.setSegmentPrefetch(count, maxBytes);
+    }
+
+    @ReactProp(name = PROP_PRELOAD_SRC)
+    public void setPreloadSrc(final ReactExoplayerView videoView, @Nullable String preloadSrc) {
+        videoView.setPreloadSrc(TextUtils.isEmpty(preloadSrc) ? null : Uri.parse(preloadSrc));
+    }
+
+    @ReactProp(name = PROP_PRELOAD_CONFIG)
+    public void setPreloadConfig(final ReactExoplayerView videoView, @Nullable ReadableMap preloadConfig) {
+        int maxBufferMs = ReactExoplayerView.DEFAULT_PRELOAD_MAX_BUFFER_MS;
+        int maxBytes = ReactExoplayerView.DEFAULT_PRELOAD_MAX_BYTES;
+        long maxAgeMs = ZapPreloader.DEFAULT_MAX_AGE_MS;
+        if (preloadConfig != null) {
+            maxBufferMs = preloadConfig.hasKey(PROP_PRELOAD_CONFIG_MAX_BUFFER_MS)
+                    ? preloadConfig.getInt(PROP_PRELOAD_CONFIG_MAX_BUFFER_MS) : maxBufferMs;
+            maxBytes = preloadConfig.hasKey(PROP_PRELOAD_CONFIG_MAX_BYTES)
+                    ? preloadConfig.getInt(PROP_PRELOAD_CONFIG_MAX_BYTES) : maxBytes;
+            maxAgeMs = preloadConfig.hasKey(PROP_PRELOAD_CONFIG_MAX_AGE_MS)
+                    ? (long) preloadConfig.getDouble(PROP_PRELOAD_CONFIG_MAX_AGE_MS) : maxAgeMs;
+        }
+        videoView.setPreloadConfig(maxBufferMs, maxBytes, maxAgeMs);
+    }
+
+    @ReactProp(name = PROP_PLAYER_KEY)
+    public void setPlayerKey(final ReactExoplayerView videoView, @Nullable String playerKey) {
+        videoView.setPlayerKey(TextUtils.isEmpty(playerKey) ? null : playerKey);
+    }
+
+    @ReactProp(name = PROP_PLAYER_KEEP_ALIVE)
+    public void setPlayerKeepAlive(final ReactExoplayerView videoView, @Nullable ReadableMap playerKeepAlive) {
+        long gracePeriodMs = PlayerRegistry.DEFAULT_GRACE_PERIOD_MS;
+        int maxIdlePlayers = PlayerRegistry.DEFAULT_MAX_IDLE_PLAYERS;
+        if (playerKeepAlive != null) {
+            gracePeriodMs = playerKeepAlive.hasKey(PROP_PLAYER_KEEP_ALIVE_GRACE_PERIOD_MS)
+                    ? (long) playerKeepAlive.getDouble(PROP_PLAYER_KEEP_ALIVE_GRACE_PERIOD_MS) : gracePeriodMs;
+            maxIdlePlayers = playerKeepAlive.hasKey(PROP_PLAYER_KEEP_ALIVE_MAX_IDLE_PLAYERS)
+                    ? playerKeepAlive.getInt(PROP_PLAYER_KEEP_ALIVE_MAX_IDLE_PLAYERS) : maxIdlePlayers;
+        }
+        videoView.setPlayerKeepAlive(gracePeriodMs, maxIdlePlayers);
+    }
+
+    @ReactProp(name = PROP_DECODER_BUDGET)
+    public void setDecoderBudget(final ReactExoplayerView videoView, @Nullable ReadableMap decoderBudget) {
+        int maxActiveDecoders = DecoderBudget.DEFAULT_MAX_ACTIVE_DECODERS;
+        if (decoderBudget != null && decoderBudget.hasKey(PROP_DECODER_BUDGET_MAX_ACTIVE_DECODERS)) {
+            maxActiveDecoders = decoderBudget.getInt(PROP_DECODER_BUDGET_MAX_ACTIVE_DECODERS);
+        }
+        videoView.setDecoderBudget(decoderBudget != null, maxActiveDecoders);
+    }
+
     @ReactProp(name = PROP_DRM_LICENSE_URL)
     public void setDrmUrl(final ReactExoplayerView videoView, @Nullable String licenseUrl) {
         Log.d("setDrmUrl", licenseUrl);
@@ -267,6 +393,16 @@ public class ReactExoplayerViewManager extends ViewGroupManager<ReactExoplayerVi
         videoView.setDrmLicenseHeader(drmKeyRequestPropertiesList.toArray(new String[0]));
     }
 
+    @ReactProp(name = PROP_DRM_TRANSPORT)
+    public void setDrmTransport(final ReactExoplayerView videoView, @Nullable String drmTransport) {
+        videoView.setDrmTransport(drmTransport);
+    }
+
+    @ReactProp(name = PROP_DRM_RENEWAL_LEAD_TIME_MS, defaultInt = 60000)
+    public void setDrmRenewalLeadTimeMs(final ReactExoplayerView videoView, final int drmRenewalLeadTimeMs) {
+        videoView.setDrmRenewalLeadTimeMs(drmRenewalLeadTimeMs);
+    }
+
     @ReactProp(name = PROP_CUSTOMER_ID)
     public void setCustomerId(final ReactExoplayerView videoView, final String customerId) {
         try {
@@ -3,11 +3,16 @@ package com.brentvatne.exoplayer;
 import androidx.annotation.StringDef;
 import android.view.View;
 
+import com.brentvatne.exoplayer.drm.DrmTimings;
+import com.brentvatne.exoplayer.telemetry.StartupTracer;
+import com.brentvatne.exoplayer.telemetry.TransferLog;
+
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.metadata.id3.Id3Frame;
 import com.google.android.exoplayer2.metadata.id3.TextInformationFrame;
@@ -45,6 +50,11 @@ class VideoEventEmitter {
     private static final String EVENT_AUDIO_BECOMING_NOISY = "onVideoAudioBecomingNoisy";
     private static final String EVENT_AUDIO_FOCUS_CHANGE = "onAudioFocusChanged";
     private static final String EVENT_PLAYBACK_RATE_CHANGE = "onPlaybackRateChange";
+    private static final String EVENT_DRM_TIMINGS = "onDrmTimings";
+    private static final String EVENT_MANIFEST_PARSED = "onManifestParsed";
+    private static final String EVENT_TRANSFER_LOG = "onTransferLog";
+    private static final String EVENT_STARTUP_TRACE = "onStartupTrace";
+    private static final String EVENT_DECODER_GRANT_CHANGED = "onDecoderGrantChanged";
 
     static final String[] Events = {
             EVENT_LOAD_START,
@@ -66,6 +76,11 @@ class VideoEventEmitter {
             EVENT_AUDIO_BECOMING_NOISY,
             EVENT_AUDIO_FOCUS_CHANGE,
             EVENT_PLAYBACK_RATE_CHANGE,
+            EVENT_DRM_TIMINGS,
+            EVENT_MANIFEST_PARSED,
+            EVENT_TRANSFER_LOG,
+            EVENT_STARTUP_TRACE,
+            EVENT_DECODER_GRANT_CHANGED,
     };
 
     @Retention(RetentionPolicy.SOURCE)
@@ -89,6 +104,11 @@ class VideoEventEmitter {
             EVENT_AUDIO_BECOMING_NOISY,
             EVENT_AUDIO_FOCUS_CHANGE,
             EVENT_PLAYBACK_RATE_CHANGE,
+            EVENT_DRM_TIMINGS,
+            EVENT_MANIFEST_PARSED,
+            EVENT_TRANSFER_LOG,
+            EVENT_STARTUP_TRACE,
+            EVENT_DECODER_GRANT_CHANGED,
     })
     @interface VideoEvents {
     }
@@ -104,6 +124,8 @@ class VideoEventEmitter {
     private static final String EVENT_PROP_PLAYABLE_DURATION = "playableDuration";
     private static final String EVENT_PROP_SEEKABLE_DURATION = "seekableDuration";
     private static final String EVENT_PROP_STREAMBITRATE = "streamBitRate";
+    private static final String EVENT_PROP_LIVE_LATENCY = "liveLatency";
+    private static final String EVENT_PROP_CATCH_UP_STATE = "catchUpState";
     private static final String EVENT_PROP_CURRENT_TIME = "currentTime";
     private static final String EVENT_PROP_SEEK_TIME = "seekTime";
     private static final String EVENT_PROP_NATURAL_SIZE = "naturalSize";
@@ -124,6 +146,34 @@ class VideoEventEmitter {
 
     private static final String EVENT_PROP_TIMED_METADATA = "metadata";
 
+    private static final String EVENT_PROP_PHASES = "phases";
+    private static final String EVENT_PROP_BUCKET_BOUNDS = "bucketBoundsMs";
+    private static final String EVENT_PROP_COUNT = "count";
+    private static final String EVENT_PROP_MIN = "minMs";
+    private static final String EVENT_PROP_MAX = "maxMs";
+    private static final String EVENT_PROP_MEAN = "meanMs";
+    private static final String EVENT_PROP_BUCKETS = "buckets";
+
+    private static final String EVENT_PROP_PARSE_TIME = "parseTimeMs";
+    private static final String EVENT_PROP_SIZE_BYTES = "sizeBytes";
+    private static final String EVENT_PROP_REUSED = "reused";
+
+    private static final String EVENT_PROP_TRANSFERS = "transfers";
+    private static final String EVENT_PROP_DROPPED = "dropped";
+    private static final String EVENT_PROP_URL_HASH = "urlHash";
+    private static final String EVENT_PROP_TRACK_TYPE = "trackType";
+    private static final String EVENT_PROP_BITRATE = "bitrate";
+    private static final String EVENT_PROP_BYTES = "bytes";
+    private static final String EVENT_PROP_TTFB = "ttfbMs";
+    private static final String EVENT_PROP_TOTAL_TIME = "totalMs";
+    private static final String EVENT_PROP_HTTP_STATUS = "httpStatus";
+    private static final String EVENT_PROP_END_TIME = "endTimeMs";
+
+    private static final String EVENT_PROP_MILESTONES = "milestones";
+    private static final String EVENT_PROP_PRELOADED = "preloaded";
+
+    private static final String EVENT_PROP_GRANTED = "granted";
+
 
     void setViewId(int viewId) {
         this.viewId = viewId;
@@ -164,12 +214,23 @@ class VideoEventEmitter {
         receiveEvent(EVENT_LOAD, event);
     }
 
-    void progressChanged(double currentPosition, double bufferedDuration, double seekableDuration, double streamBitRate) {
+    /**
+     * @param liveLatencyMs Latency behind the live edge, {@link C#TIME_UNSET} if not live.
+     * @param catchUpState State of the live catch-up, null if disabled.
+     */
+    void progressChanged(double currentPosition, double bufferedDuration, double seekableDuration,
+                         double streamBitRate, long liveLatencyMs, String catchUpState) {
         WritableMap event = Arguments.createMap();
         event.putDouble(EVENT_PROP_CURRENT_TIME, currentPosition / 1000D);
         event.putDouble(EVENT_PROP_PLAYABLE_DURATION, bufferedDuration / 1000D);
         event.putDouble(EVENT_PROP_SEEKABLE_DURATION, seekableDuration / 1000D);
         event.putDouble(EVENT_PROP_STREAMBITRATE, streamBitRate);
+        if (liveLatencyMs != C.TIME_UNSET) {
+            event.putDouble(EVENT_PROP_LIVE_LATENCY, liveLatencyMs / 1000D);
+        }
+        if (catchUpState != null) {
+            event.putString(EVENT_PROP_CATCH_UP_STATE, catchUpState);
+        }
         receiveEvent(EVENT_PROGRESS, event);
     }
 
@@ -265,6 +326,101 @@ class VideoEventEmitter {
         receiveEvent(EVENT_TIMED_METADATA, event);
     }
 
+    void drmTimings(DrmTimings timings) {
+        WritableArray bucketBounds = Arguments.createArray();
+        for (long bound : DrmTimings.BUCKET_BOUNDS_MS) {
+            bucketBounds.pushDouble(bound);
+        }
+
+        WritableMap phases = Arguments.createMap();
+        for (int phase = 0; phase < DrmTimings.PHASE_NAMES.length; phase++) {
+            if (timings.getCount(phase) == 0) {
+                continue;
+            }
+            WritableArray buckets = Arguments.createArray();
+            for (int count : timings.getBuckets(phase)) {
+                buckets.pushInt(count);
+            }
+            WritableMap map = Arguments.createMap();
+            map.putInt(EVENT_PROP_COUNT, timings.getCount(phase));
+            map.putDouble(EVENT_PROP_MIN, timings.getMinMs(phase));
+            map.putDouble(EVENT_PROP_MAX, timings.getMaxMs(phase));
+            map.putDouble(EVENT_PROP_MEAN, timings.getMeanMs(phase));
+            map.putArray(EVENT_PROP_BUCKETS, buckets);
+            phases.putMap(DrmTimings.PHASE_NAMES[phase], map);
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putMap(EVENT_PROP_PHASES, phases);
+        event.putArray(EVENT_PROP_BUCKET_BOUNDS, bucketBounds);
+        receiveEvent(EVENT_DRM_TIMINGS, event);
+    }
+
+    void manifestParsed(long parseTimeMs, int sizeBytes, boolean reused) {
+        WritableMap event = Arguments.createMap();
+        event.putDouble(EVENT_PROP_PARSE_TIME, parseTimeMs);
+        event.putInt(EVENT_PROP_SIZE_BYTES, sizeBytes);
+        event.putBoolean(EVENT_PROP_REUSED, reused);
+        receiveEvent(EVENT_MANIFEST_PARSED, event);
+    }
+
+    void transferLog(TransferLog transferLog) {
+        final WritableArray transfers = Arguments.createArray();
+        transferLog.drain(new TransferLog.Visitor() {
+            @Override
+            public void visit(int urlHash, int trackType, int bitrate, long bytes, int ttfbMs,
+                              int totalMs, int httpStatus, long endTimeMs) {
+                WritableMap transfer = Arguments.createMap();
+                transfer.putInt(EVENT_PROP_URL_HASH, urlHash);
+                transfer.putString(EVENT_PROP_TRACK_TYPE, trackTypeName(trackType));
+                transfer.putInt(EVENT_PROP_BITRATE, bitrate);
+                transfer.putDouble(EVENT_PROP_BYTES, bytes);
+                transfer.putInt(EVENT_PROP_TTFB, ttfbMs);
+                transfer.putInt(EVENT_PROP_TOTAL_TIME, totalMs);
+                transfer.putInt(EVENT_PROP_HTTP_STATUS, httpStatus);
+                transfer.putDouble(EVENT_PROP_END_TIME, endTimeMs);
+                transfers.pushMap(transfer);
+            }
+        });
+        WritableMap event = Arguments.createMap();
+        event.putArray(EVENT_PROP_TRANSFERS, transfers);
+        event.putDouble(EVENT_PROP_DROPPED, transferLog.getDroppedCount());
+        receiveEvent(EVENT_TRANSFER_LOG, event);
+    }
+
+    void startupTrace(StartupTracer startupTracer) {
+        WritableMap milestones = Arguments.createMap();
+        for (int milestone = 0; milestone < StartupTracer.MILESTONE_NAMES.length; milestone++) {
+            long offsetMs = startupTracer.getOffsetMs(milestone);
+            if (offsetMs != C.TIME_UNSET) {
+                milestones.putDouble(StartupTracer.MILESTONE_NAMES[milestone], offsetMs);
+            }
+        }
+        WritableMap event = Arguments.createMap();
+        event.putMap(EVENT_PROP_MILESTONES, milestones);
+        event.putBoolean(EVENT_PROP_PRELOADED, startupTracer.isPreloaded());
+        receiveEvent(EVENT_STARTUP_TRACE, event);
+    }
+
+    void decoderGrantChanged(boolean granted) {
+        WritableMap event = Arguments.createMap();
+        event.putBoolean(EVENT_PROP_GRANTED, granted);
+        receiveEvent(EVENT_DECODER_GRANT_CHANGED, event);
+    }
+
+    private static String trackTypeName(int trackType) {
+        switch (trackType) {
+            case C.TRACK_TYPE_VIDEO:
+                return "video";
+            case C.TRACK_TYPE_AUDIO:
+                return "audio";
+            case C.TRACK_TYPE_TEXT:
+                return "text";
+            default:
+                return "other";
+        }
+    }
+
     void audioFocusChanged(boolean hasFocus) {
         WritableMap map = Arguments.createMap();
         map.putBoolean(EVENT_PROP_HAS_AUDIO_FOCUS, hasFocus);
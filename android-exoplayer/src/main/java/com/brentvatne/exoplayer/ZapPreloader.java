@@ -0,0 +1,111 @@
+package com.brentvatne.exoplayer;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Holds a surface-less player prepared with the channel the user is expected to zap to next, so
+ * its manifest, license, init segments and first seconds of media are loaded by the time it is
+ * selected. The view adopts the player when its source is set to the preloaded uri.
+ * <p>
+ * One preload at a time; it is released when replaced or once older than the maximum age. In the
+ * decoder budget its video renderer stays disabled until the budget grants it a decoder.
+ */
+final class ZapPreloader {
+
+    private static final String TAG = "ZapPreloader";
+
+    static final long DEFAULT_MAX_AGE_MS = 30000;
+
+    private final Handler handler;
+    private long maxAgeMs = DEFAULT_MAX_AGE_MS;
+    private DetachedPlayer preload;
+    private long preloadedAtMs;
+    private boolean inDecoderBudget;
+
+    private final Runnable expire = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Preload expired");
+            clear();
+        }
+    };
+
+    ZapPreloader(Handler handler) {
+        this.handler = handler;
+    }
+
+    void setMaxAgeMs(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Makes preloads compete with the views of the decoder budget for a decoder, instead of always
+     * decoding.
+     */
+    void setInDecoderBudget(boolean inDecoderBudget) {
+        if (this.inDecoderBudget == inDecoderBudget) {
+            return;
+        }
+        this.inDecoderBudget = inDecoderBudget;
+        if (preload != null) {
+            if (inDecoderBudget) {
+                joinDecoderBudget(preload);
+            } else {
+                DecoderBudget.getInstance().remove(preload);
+                preload.onDecoderGranted(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the uri being preloaded, or null.
+     */
+    Uri getUri() {
+        return preload != null ? preload.uri : null;
+    }
+
+    /**
+     * Replaces the current preload, releasing it.
+     */
+    void set(DetachedPlayer preload) {
+        clear();
+        this.preload = preload;
+        if (inDecoderBudget) {
+            joinDecoderBudget(preload);
+        }
+        preloadedAtMs = SystemClock.elapsedRealtime();
+        handler.postDelayed(expire, maxAgeMs);
+    }
+
+    /**
+     * Returns the preload of {@code uri} and hands over its ownership, or null if {@code uri} is
+     * not preloaded.
+     */
+    DetachedPlayer take(Uri uri) {
+        DetachedPlayer preload = this.preload;
+        if (preload == null || !preload.uri.equals(uri)) {
+            return null;
+        }
+        this.preload = null;
+        handler.removeCallbacks(expire);
+        Log.d(TAG, "Adopting preload after " + (SystemClock.elapsedRealtime() - preloadedAtMs) + " ms");
+        return preload;
+    }
+
+    void clear() {
+        handler.removeCallbacks(expire);
+        if (preload != null) {
+            preload.release();
+            preload = null;
+        }
+    }
+
+    private static void joinDecoderBudget(DetachedPlayer preload) {
+        // Applies from its first track selection when set right after prepare.
+        preload.onDecoderGranted(false);
+        DecoderBudget.getInstance().add(preload);
+    }
+}
@@ -0,0 +1,153 @@
+package com.brentvatne.exoplayer.bitrate;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+
+/**
+ * Last bandwidth estimate of a session per network, persisted across launches, so the next session
+ * on the same network starts at a fitting bitrate instead of the preset's
+ * {@link BitrateAdaptionPreset#maxInitialBitrate()}.
+ * <p>
+ * Networks are told apart by type, and by SSID on Wi-Fi or generation on cellular. The SSID is
+ * only known when the app holds the permissions Android requires for it, otherwise all Wi-Fi
+ * networks share an estimate.
+ */
+public final class BandwidthEstimateStore {
+
+    private static final String TAG = "BandwidthEstimateStore";
+
+    private static final String PREFERENCES_NAME = "RCTVideoBandwidthEstimates";
+
+    /* Estimates older than this are ignored. */
+    private static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String UNKNOWN_SSID = "<unknown ssid>";
+
+    private static BandwidthEstimateStore instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+
+    private BandwidthEstimateStore(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized BandwidthEstimateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new BandwidthEstimateStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a key for the current network, or null if there is no connected network or it
+     * cannot be determined.
+     */
+    public String getNetworkKey() {
+        if (!hasPermission(Manifest.permission.ACCESS_NETWORK_STATE)) {
+            return null;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager != null ? connectivityManager.getActiveNetworkInfo() : null;
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return null;
+        }
+        switch (networkInfo.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                return "wifi:" + ssidHash();
+            case ConnectivityManager.TYPE_MOBILE:
+                return "cell:" + cellClass(networkInfo.getSubtype());
+            case ConnectivityManager.TYPE_ETHERNET:
+                return "ethernet";
+            default:
+                return "other:" + networkInfo.getType();
+        }
+    }
+
+    /**
+     * Returns the stored estimate in bits per second for {@code networkKey}, or
+     * {@link BandwidthMeter#NO_ESTIMATE}.
+     */
+    public long getEstimate(String networkKey) {
+        if (networkKey == null) {
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+        String value = preferences.getString(networkKey, null);
+        if (value == null) {
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+        String[] parts = value.split(",");
+        try {
+            long bitrate = Long.parseLong(parts[0]);
+            long timeMs = Long.parseLong(parts[1]);
+            return System.currentTimeMillis() - timeMs < MAX_AGE_MS ? bitrate : BandwidthMeter.NO_ESTIMATE;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Ignoring malformed estimate for " + networkKey);
+            return BandwidthMeter.NO_ESTIMATE;
+        }
+    }
+
+    public void putEstimate(String networkKey, long bitrate) {
+        if (networkKey == null || bitrate == BandwidthMeter.NO_ESTIMATE) {
+            return;
+        }
+        preferences.edit()
+                .putString(networkKey, bitrate + "," + System.currentTimeMillis())
+                .apply();
+    }
+
+    private String ssidHash() {
+        if (!hasPermission(Manifest.permission.ACCESS_WIFI_STATE)) {
+            return "";
+        }
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        WifiInfo wifiInfo = wifiManager != null ? wifiManager.getConnectionInfo() : null;
+        String ssid = wifiInfo != null ? wifiInfo.getSSID() : null;
+        if (ssid == null || UNKNOWN_SSID.equals(ssid)) {
+            return "";
+        }
+        // Not storing network names in clear.
+        return Integer.toHexString(ssid.hashCode());
+    }
+
+    private boolean hasPermission(String permission) {
+        return context.checkCallingOrSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static String cellClass(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return "2g";
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+                return "3g";
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return "4g";
+            default:
+                return "other";
+        }
+    }
+}
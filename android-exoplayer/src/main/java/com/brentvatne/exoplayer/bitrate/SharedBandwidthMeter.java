@@ -0,0 +1,173 @@
+package com.brentvatne.exoplayer.bitrate;
+
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bandwidth estimate of the whole process, fed by the transfers of all players. A player alone
+ * estimates the link from its own transfers; players loading at the same time each see the link
+ * as idle between their own transfers and together pick bitrates exceeding it. With several
+ * players loading, each {@link Participant} is given an equal share of the shared estimate.
+ * <p>
+ * Byte counting, on every read of every player, is lock free. Sample boundaries, at transfer
+ * start and end, are synchronized.
+ */
+public final class SharedBandwidthMeter {
+
+    private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+    private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+
+    /* Participants without transfers for this long have a full buffer and are not competing. */
+    private static final long ACTIVE_WINDOW_MS = 10000;
+
+    private static final long NO_ESTIMATE = BandwidthMeter.NO_ESTIMATE;
+
+    private static final SharedBandwidthMeter INSTANCE = new SharedBandwidthMeter();
+
+    private final SlidingPercentile slidingPercentile =
+            new SlidingPercentile(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT);
+    private final AtomicLong sampleBytesTransferred = new AtomicLong();
+    private final Set<Participant> participants = new CopyOnWriteArraySet<>();
+
+    private int streamCount;
+    private long sampleStartTimeMs;
+    private long totalElapsedTimeMs;
+    private long totalBytesTransferred;
+    private volatile long bitrateEstimate = NO_ESTIMATE;
+
+    private SharedBandwidthMeter() {
+    }
+
+    public static SharedBandwidthMeter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a meter for a player, estimating from {@code ownMeter} while the player loads alone.
+     * The participant only counts towards the shares once {@linkplain Participant#setActive
+     * active}.
+     */
+    public Participant newParticipant(DefaultBandwidthMeter ownMeter) {
+        return new Participant(ownMeter);
+    }
+
+    /**
+     * Estimate of the whole link in bits per second, or {@link BandwidthMeter#NO_ESTIMATE}.
+     */
+    public long getBitrateEstimate() {
+        return bitrateEstimate;
+    }
+
+    private synchronized void onTransferStart() {
+        if (streamCount++ == 0) {
+            sampleStartTimeMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private void onBytesTransferred(int bytes) {
+        sampleBytesTransferred.addAndGet(bytes);
+    }
+
+    private synchronized void onTransferEnd() {
+        long nowMs = SystemClock.elapsedRealtime();
+        int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+        long sampleBytes = sampleBytesTransferred.getAndSet(0);
+        totalElapsedTimeMs += sampleElapsedTimeMs;
+        totalBytesTransferred += sampleBytes;
+        if (sampleElapsedTimeMs > 0) {
+            float bitsPerSecond = (sampleBytes * 8000) / sampleElapsedTimeMs;
+            slidingPercentile.addSample((int) Math.sqrt(sampleBytes), bitsPerSecond);
+            if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+                    || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+                bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+            }
+        }
+        if (--streamCount > 0) {
+            sampleStartTimeMs = nowMs;
+        }
+    }
+
+    private int getActiveParticipantCount() {
+        long nowMs = SystemClock.elapsedRealtime();
+        int count = 0;
+        for (Participant participant : participants) {
+            if (participant.activeTransfers.get() > 0
+                    || nowMs - participant.lastTransferEndMs < ACTIVE_WINDOW_MS) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Bandwidth meter of one player, to be passed to both its data sources and its track
+     * selection.
+     */
+    public final class Participant implements BandwidthMeter, TransferListener<Object> {
+
+        private final DefaultBandwidthMeter ownMeter;
+        private final AtomicLong activeTransfers = new AtomicLong();
+        private volatile long lastTransferEndMs = Long.MIN_VALUE / 2;
+
+        private Participant(DefaultBandwidthMeter ownMeter) {
+            this.ownMeter = ownMeter;
+        }
+
+        /**
+         * Whether the player is competing for bandwidth, true from player creation to release.
+         */
+        public void setActive(boolean active) {
+            if (active) {
+                participants.add(this);
+            } else {
+                participants.remove(this);
+            }
+        }
+
+        /**
+         * Returns the player's own estimate while it loads alone, its share of the shared estimate
+         * otherwise.
+         */
+        @Override
+        public long getBitrateEstimate() {
+            long ownEstimate = ownMeter.getBitrateEstimate();
+            long sharedEstimate = bitrateEstimate;
+            int activeCount = getActiveParticipantCount();
+            if (activeCount <= 1 || sharedEstimate == NO_ESTIMATE) {
+                return ownEstimate;
+            }
+            long share = sharedEstimate / activeCount;
+            return ownEstimate == NO_ESTIMATE ? share : Math.min(ownEstimate, share);
+        }
+
+        @Override
+        public void onTransferStart(Object source, DataSpec dataSpec) {
+            activeTransfers.incrementAndGet();
+            ownMeter.onTransferStart(source, dataSpec);
+            SharedBandwidthMeter.this.onTransferStart();
+        }
+
+        @Override
+        public void onBytesTransferred(Object source, int bytesTransferred) {
+            ownMeter.onBytesTransferred(source, bytesTransferred);
+            SharedBandwidthMeter.this.onBytesTransferred(bytesTransferred);
+        }
+
+        @Override
+        public void onTransferEnd(Object source) {
+            ownMeter.onTransferEnd(source);
+            SharedBandwidthMeter.this.onTransferEnd();
+            lastTransferEndMs = SystemClock.elapsedRealtime();
+            activeTransfers.decrementAndGet();
+        }
+    }
+}
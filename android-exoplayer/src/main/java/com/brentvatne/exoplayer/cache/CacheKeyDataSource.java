@@ -0,0 +1,73 @@
+package com.brentvatne.exoplayer.cache;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Gives requests without a cache key one derived from their uri minus the ignored query
+ * parameters, so segments requested with different CDN tokens share a cache entry. Counts the
+ * bytes read for {@link SegmentCache#getStats()}.
+ */
+final class CacheKeyDataSource implements DataSource {
+
+    private final DataSource cacheDataSource;
+    private final Set<String> ignoredQueryParameters;
+    private final SegmentCache segmentCache;
+
+    CacheKeyDataSource(DataSource cacheDataSource, Set<String> ignoredQueryParameters,
+                       SegmentCache segmentCache) {
+        this.cacheDataSource = cacheDataSource;
+        this.ignoredQueryParameters = ignoredQueryParameters;
+        this.segmentCache = segmentCache;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        if (dataSpec.key == null) {
+            dataSpec = new DataSpec(dataSpec.uri, dataSpec.postBody, dataSpec.absoluteStreamPosition,
+                    dataSpec.position, dataSpec.length, keyFor(dataSpec.uri), dataSpec.flags);
+        }
+        return cacheDataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        int bytesRead = cacheDataSource.read(buffer, offset, readLength);
+        if (bytesRead != C.RESULT_END_OF_INPUT) {
+            segmentCache.onBytesRead(bytesRead);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public Uri getUri() {
+        return cacheDataSource.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cacheDataSource.close();
+    }
+
+    private String keyFor(Uri uri) {
+        if (uri.getQuery() == null || ignoredQueryParameters.isEmpty()) {
+            return uri.toString();
+        }
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (ignoredQueryParameters.contains(name)) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+}
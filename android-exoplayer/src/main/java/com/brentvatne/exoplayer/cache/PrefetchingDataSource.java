@@ -0,0 +1,76 @@
+package com.brentvatne.exoplayer.cache;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Serves segments prefetched by {@link SegmentPrefetcher} from memory and reads everything else
+ * from upstream.
+ */
+final class PrefetchingDataSource implements DataSource {
+
+    private final DataSource upstream;
+    private final SegmentPrefetcher prefetcher;
+
+    private Uri uri;
+    private byte[] data;
+    private int readPosition;
+    private boolean upstreamOpened;
+
+    PrefetchingDataSource(DataSource upstream, SegmentPrefetcher prefetcher) {
+        this.upstream = upstream;
+        this.prefetcher = prefetcher;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        try {
+            data = prefetcher.onOpen(dataSpec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (data != null) {
+            uri = dataSpec.uri;
+            readPosition = 0;
+            return data.length;
+        }
+        upstreamOpened = true;
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (data == null) {
+            return upstream.read(buffer, offset, readLength);
+        }
+        if (readPosition == data.length) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        int bytesRead = Math.min(readLength, data.length - readPosition);
+        System.arraycopy(data, readPosition, buffer, offset, bytesRead);
+        readPosition += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public Uri getUri() {
+        return data != null ? uri : upstream.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+        uri = null;
+        if (upstreamOpened) {
+            upstreamOpened = false;
+            upstream.close();
+        }
+    }
+}
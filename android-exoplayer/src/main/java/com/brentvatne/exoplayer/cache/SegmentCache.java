@@ -0,0 +1,162 @@
+package com.brentvatne.exoplayer.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide on-disk LRU cache for media segments, shared by all players that enable it.
+ * <p>
+ * Segments are stored as downloaded, so CENC protected content stays encrypted at rest and is only
+ * decrypted by the CDM at playback. The cache lives in the app's private cache directory.
+ */
+public final class SegmentCache {
+
+    private static final String TAG = "SegmentCache";
+
+    private static final String CACHE_DIRECTORY = "RCTVideoSegments";
+
+    /* Query parameters commonly carrying CDN tokens, which change between requests of the same
+     * segment. */
+    public static final Set<String> DEFAULT_IGNORED_QUERY_PARAMETERS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("token", "hdnts", "hdnea", "Expires", "Signature",
+                    "Key-Pair-Id", "Policy")));
+
+    private static SegmentCache instance;
+
+    private final File directory;
+    private final AtomicLong cachedBytesRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private SimpleCache cache;
+    private long maxBytes;
+    private int leaseCount;
+
+    private final CacheDataSource.EventListener eventListener = new CacheDataSource.EventListener() {
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            SegmentCache.this.cachedBytesRead.addAndGet(cachedBytesRead);
+        }
+    };
+
+    private SegmentCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized SegmentCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new SegmentCache(new File(context.getCacheDir(), CACHE_DIRECTORY));
+        }
+        return instance;
+    }
+
+    /**
+     * Leases the cache, capped at {@code maxBytes}. The cap of a cache in use by other players
+     * only changes once all of them have released their lease.
+     */
+    public synchronized Lease acquire(long maxBytes) {
+        if (cache != null && this.maxBytes != maxBytes && leaseCount == 0) {
+            try {
+                cache.release();
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to release segment cache", e);
+            }
+            cache = null;
+        }
+        if (cache == null) {
+            cache = new SimpleCache(directory, new LeastRecentlyUsedCacheEvictor(maxBytes));
+            this.maxBytes = maxBytes;
+            Log.d(TAG, "Opened segment cache of " + maxBytes + " bytes");
+        } else if (this.maxBytes != maxBytes) {
+            Log.w(TAG, "Segment cache in use, keeping its size of " + this.maxBytes + " bytes");
+        }
+        leaseCount++;
+        return new Lease(cache);
+    }
+
+    private synchronized void release() {
+        leaseCount--;
+    }
+
+    void onBytesRead(int count) {
+        bytesRead.addAndGet(count);
+    }
+
+    public Stats getStats() {
+        long cacheSpace;
+        synchronized (this) {
+            cacheSpace = cache != null ? cache.getCacheSpace() : 0;
+        }
+        long hitBytes = cachedBytesRead.get();
+        return new Stats(hitBytes, Math.max(0, bytesRead.get() - hitBytes), cacheSpace);
+    }
+
+    public static final class Stats {
+
+        /* Bytes served from the cache. */
+        public final long hitBytes;
+        /* Bytes fetched from the network through the cache. */
+        public final long missBytes;
+        public final long cacheSizeBytes;
+
+        Stats(long hitBytes, long missBytes, long cacheSizeBytes) {
+            this.hitBytes = hitBytes;
+            this.missBytes = missBytes;
+            this.cacheSizeBytes = cacheSizeBytes;
+        }
+    }
+
+    /**
+     * Cache leased by a player. Must be released once the player has been released.
+     */
+    public final class Lease {
+
+        private final SimpleCache cache;
+        private boolean released;
+
+        private Lease(SimpleCache cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Returns a factory reading through the cache from {@code upstreamFactory}.
+         *
+         * @param ignoredQueryParameters Query parameters left out of cache keys.
+         */
+        public DataSource.Factory wrap(final DataSource.Factory upstreamFactory,
+                                       final Set<String> ignoredQueryParameters) {
+            return new DataSource.Factory() {
+                @Override
+                public DataSource createDataSource() {
+                    CacheDataSource cacheDataSource = new CacheDataSource(cache,
+                            upstreamFactory.createDataSource(), new FileDataSource(),
+                            new CacheDataSink(cache, CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE),
+                            CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, eventListener);
+                    return new CacheKeyDataSource(cacheDataSource, ignoredQueryParameters,
+                            SegmentCache.this);
+                }
+            };
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            SegmentCache.this.release();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.brentvatne.exoplayer.cache;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the next segments of the representation a player is loading from in parallel, ahead
+ * of the chunk source asking for them, into a bounded in-memory buffer. Single connection
+ * downloads cannot fill high latency links; parallel ones also let the bandwidth meter see the
+ * actual throughput.
+ * <p>
+ * Only applies to static (VOD) manifests with segment templates or lists, and to segments whose
+ * size is known or can be estimated from a bitrate, as the byte budget counts downloads in flight
+ * by their estimated size. Prefetched segments of an adaptation set are dropped as soon as a
+ * request for it is not the next segment of the same representation, which is what seeks and ABR
+ * switches look like.
+ */
+public final class SegmentPrefetcher {
+
+    private static final String TAG = "SegmentPrefetcher";
+
+    /* Manifests with more segments than this are not indexed. */
+    private static final int MAX_INDEXED_SEGMENTS = 50000;
+
+    private static final byte[] NO_DATA = new byte[0];
+
+    private final DataSource.Factory upstreamFactory;
+    private final int segmentCount;
+    private final long maxBytes;
+    private final ExecutorService executor;
+
+    /* Segment key to position of the segment in the manifest. */
+    private final Map<String, SegmentPosition> segments = new HashMap<>();
+    private final Map<String, Prefetch> prefetches = new HashMap<>();
+    /* Last requested segment per adaptation set. */
+    private final Map<String, SegmentPosition> lastRequested = new HashMap<>();
+    private DashManifest manifest;
+    /* Bytes of prefetched segments not consumed yet, estimated for those still downloading. */
+    private long bufferedBytes;
+    private boolean released;
+
+    /**
+     * @param upstreamFactory Factory for the prefetch data sources, they report to its transfer
+     *     listener as the chunk source's do.
+     * @param segmentCount Number of segments to prefetch, also the number of parallel downloads.
+     * @param maxBytes Byte budget of prefetched, not yet consumed, segments.
+     */
+    public SegmentPrefetcher(DataSource.Factory upstreamFactory, int segmentCount, long maxBytes) {
+        this.upstreamFactory = upstreamFactory;
+        this.segmentCount = segmentCount;
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newFixedThreadPool(segmentCount);
+    }
+
+    /**
+     * Returns a factory whose data sources serve prefetched segments and trigger prefetching.
+     */
+    public DataSource.Factory wrap(final DataSource.Factory factory) {
+        return new DataSource.Factory() {
+            @Override
+            public DataSource createDataSource() {
+                return new PrefetchingDataSource(factory.createDataSource(), SegmentPrefetcher.this);
+            }
+        };
+    }
+
+    /**
+     * Indexes the segments of a newly loaded manifest. Dynamic manifests disable prefetching.
+     */
+    public synchronized void setManifest(DashManifest manifest) {
+        if (manifest == this.manifest) {
+            return;
+        }
+        this.manifest = manifest;
+        cancelAll();
+        segments.clear();
+        lastRequested.clear();
+        if (manifest.dynamic) {
+            return;
+        }
+        for (int periodIndex = 0; periodIndex < manifest.getPeriodCount(); periodIndex++) {
+            Period period = manifest.getPeriod(periodIndex);
+            long periodDurationUs = manifest.getPeriodDurationUs(periodIndex);
+            for (int adaptationIndex = 0; adaptationIndex < period.adaptationSets.size(); adaptationIndex++) {
+                String stream = periodIndex + ":" + adaptationIndex;
+                List<Representation> representations = period.adaptationSets.get(adaptationIndex).representations;
+                int maxBitrate = Format.NO_VALUE;
+                for (Representation representation : representations) {
+                    maxBitrate = Math.max(maxBitrate, representation.format.bitrate);
+                }
+                for (Representation representation : representations) {
+                    DashSegmentIndex index = representation.getIndex();
+                    if (index == null || periodDurationUs == C.TIME_UNSET) {
+                        continue;
+                    }
+                    long firstSegmentNum = index.getFirstSegmentNum();
+                    long count = index.getSegmentCount(periodDurationUs);
+                    if (count < 0 || segments.size() + count > MAX_INDEXED_SEGMENTS) {
+                        Log.d(TAG, "Not prefetching, manifest has unbounded or too many segments");
+                        segments.clear();
+                        return;
+                    }
+                    for (long segmentNum = firstSegmentNum; segmentNum < firstSegmentNum + count; segmentNum++) {
+                        RangedUri rangedUri = index.getSegmentUrl((int) segmentNum);
+                        segments.put(keyFor(rangedUri.resolveUri(representation.baseUrl),
+                                rangedUri.start, rangedUri.length),
+                                new SegmentPosition(stream, representation, index, segmentNum,
+                                        firstSegmentNum + count - 1, periodDurationUs, maxBitrate));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all prefetched segments, for example on seek.
+     */
+    public synchronized void cancelAll() {
+        for (Prefetch prefetch : prefetches.values()) {
+            discard(prefetch);
+        }
+        prefetches.clear();
+        lastRequested.clear();
+    }
+
+    public synchronized void release() {
+        released = true;
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Called by data sources when the chunk source opens a segment. Returns the prefetched data of
+     * the segment, waiting for its download if needed, or null if it has to be loaded from
+     * upstream. Prefetches the segments after it.
+     */
+    byte[] onOpen(DataSpec dataSpec) throws InterruptedException {
+        String key = keyFor(dataSpec.uri, dataSpec.absoluteStreamPosition, dataSpec.length);
+        Prefetch prefetch;
+        synchronized (this) {
+            SegmentPosition position = segments.get(key);
+            if (position == null || released) {
+                return null;
+            }
+            SegmentPosition last = lastRequested.get(position.stream);
+            if (last != null && (last.representation != position.representation
+                    || last.segmentNum + 1 != position.segmentNum)) {
+                // Seek or ABR switch, what was prefetched will not be asked for.
+                cancelStream(position.stream, key);
+            }
+            lastRequested.put(position.stream, position);
+            prefetch = prefetches.remove(key);
+            scheduleAfter(position);
+        }
+        if (prefetch == null) {
+            return null;
+        }
+        try {
+            byte[] data = prefetch.future.get();
+            return data.length > 0 ? data : null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        } finally {
+            onConsumed(prefetch);
+        }
+    }
+
+    private void scheduleAfter(SegmentPosition position) {
+        long lastSegmentNum = Math.min(position.lastSegmentNum, position.segmentNum + segmentCount);
+        for (long segmentNum = position.segmentNum + 1; segmentNum <= lastSegmentNum; segmentNum++) {
+            RangedUri rangedUri = position.index.getSegmentUrl((int) segmentNum);
+            final DataSpec dataSpec = new DataSpec(
+                    rangedUri.resolveUri(position.representation.baseUrl), rangedUri.start,
+                    rangedUri.length, null);
+            String key = keyFor(dataSpec.uri, dataSpec.absoluteStreamPosition, dataSpec.length);
+            if (prefetches.containsKey(key)) {
+                continue;
+            }
+            long estimatedBytes = estimateBytes(position, segmentNum, dataSpec);
+            if (estimatedBytes == C.LENGTH_UNSET) {
+                // Could not be counted against the budget.
+                return;
+            }
+            if (bufferedBytes + estimatedBytes > maxBytes) {
+                return;
+            }
+            final Prefetch prefetch = new Prefetch(position.stream);
+            // Reserved until the download completes with the actual size.
+            prefetch.bytes = estimatedBytes;
+            bufferedBytes += estimatedBytes;
+            prefetch.future = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return download(dataSpec, prefetch);
+                }
+            });
+            prefetches.put(key, prefetch);
+        }
+    }
+
+    /**
+     * Returns the size of a segment from its byte range, or else from the bitrate and duration of
+     * its representation, the highest bitrate of its adaptation set if it has none.
+     * {@link C#LENGTH_UNSET} if none of them is known.
+     */
+    private static long estimateBytes(SegmentPosition position, long segmentNum, DataSpec dataSpec) {
+        if (dataSpec.length != C.LENGTH_UNSET) {
+            return dataSpec.length;
+        }
+        int bitrate = position.representation.format.bitrate;
+        if (bitrate == Format.NO_VALUE) {
+            bitrate = position.maxBitrate;
+        }
+        long durationUs = position.index.getDurationUs(segmentNum, position.periodDurationUs);
+        if (bitrate == Format.NO_VALUE || durationUs == C.TIME_UNSET) {
+            return C.LENGTH_UNSET;
+        }
+        return bitrate * durationUs / (8 * C.MICROS_PER_SECOND);
+    }
+
+    private byte[] download(DataSpec dataSpec, Prefetch prefetch) throws Exception {
+        DataSource dataSource = upstreamFactory.createDataSource();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            dataSource.open(dataSpec);
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while (!prefetch.cancelled
+                    && (read = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+                output.write(buffer, 0, read);
+            }
+        } catch (Exception e) {
+            // Nothing will be buffered, release the reservation.
+            onConsumed(prefetch);
+            throw e;
+        } finally {
+            Util.closeQuietly(dataSource);
+        }
+        if (prefetch.cancelled) {
+            return NO_DATA;
+        }
+        byte[] data = output.toByteArray();
+        synchronized (this) {
+            if (!prefetch.cancelled) {
+                bufferedBytes += data.length - prefetch.bytes;
+                prefetch.bytes = data.length;
+            }
+        }
+        return data;
+    }
+
+    private void cancelStream(String stream, String keepKey) {
+        for (Iterator<Map.Entry<String, Prefetch>> iterator = prefetches.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Prefetch> entry = iterator.next();
+            if (entry.getValue().stream.equals(stream) && !entry.getKey().equals(keepKey)) {
+                discard(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void discard(Prefetch prefetch) {
+        prefetch.cancelled = true;
+        prefetch.future.cancel(true);
+        bufferedBytes -= prefetch.bytes;
+        prefetch.bytes = 0;
+    }
+
+    private synchronized void onConsumed(Prefetch prefetch) {
+        bufferedBytes -= prefetch.bytes;
+        prefetch.bytes = 0;
+    }
+
+    private static String keyFor(Uri uri, long position, long length) {
+        return uri + "|" + position + "|" + length;
+    }
+
+    private static final class SegmentPosition {
+
+        final String stream;
+        final Representation representation;
+        final DashSegmentIndex index;
+        final long segmentNum;
+        final long lastSegmentNum;
+        final long periodDurationUs;
+        /* Highest bitrate of the adaptation set, Format.NO_VALUE if none is known. */
+        final int maxBitrate;
+
+        SegmentPosition(String stream, Representation representation, DashSegmentIndex index,
+                        long segmentNum, long lastSegmentNum, long periodDurationUs, int maxBitrate) {
+            this.stream = stream;
+            this.representation = representation;
+            this.index = index;
+            this.segmentNum = segmentNum;
+            this.lastSegmentNum = lastSegmentNum;
+            this.periodDurationUs = periodDurationUs;
+            this.maxBitrate = maxBitrate;
+        }
+    }
+
+    private static final class Prefetch {
+
+        final String stream;
+        Future<byte[]> future;
+        volatile boolean cancelled;
+        /* Bytes counted in bufferedBytes, estimated until downloaded, guarded by the prefetcher. */
+        long bytes;
+
+        Prefetch(String stream) {
+            this.stream = stream;
+        }
+    }
+}
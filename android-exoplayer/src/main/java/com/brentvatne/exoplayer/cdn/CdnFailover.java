@@ -0,0 +1,174 @@
+package com.brentvatne.exoplayer.cdn;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes requests between equivalent base urls, for example the same content on several CDNs.
+ * Requests whose url starts with one base url of a group are sent to the member of the group with
+ * the lowest recent latency, and on failure retried on the next one, so a misbehaving edge costs
+ * a retry instead of a player restart.
+ * <p>
+ * Groups come from the app, see {@link #setBaseUrls}, and from the BaseURL elements sharing a
+ * parent in the DASH manifest, see {@link #setManifestBaseUrlGroups}. Latency and errors are
+ * tracked per base url for the whole process, as players tend to share CDNs.
+ */
+public final class CdnFailover {
+
+    /* Weight of a new latency sample. */
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private static final long MIN_EXCLUSION_MS = 5000;
+    private static final long MAX_EXCLUSION_MS = 60000;
+
+    private static final Map<String, Score> SCORES = new ConcurrentHashMap<>();
+
+    private volatile List<List<String>> configuredGroups = Collections.emptyList();
+    private volatile List<List<String>> manifestGroups = Collections.emptyList();
+
+    /**
+     * Returns a factory whose data sources fail over between the base urls of a group.
+     */
+    public DataSource.Factory wrap(final DataSource.Factory upstreamFactory) {
+        return new DataSource.Factory() {
+            @Override
+            public DataSource createDataSource() {
+                return new CdnFailoverDataSource(upstreamFactory.createDataSource(), CdnFailover.this);
+            }
+        };
+    }
+
+    /**
+     * Sets base urls serving the same content, in order of preference. Empty to disable.
+     */
+    public void setBaseUrls(List<String> baseUrls) {
+        List<String> group = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            String path = Uri.parse(baseUrl).getPath();
+            // A bare host must not match other hosts it is a prefix of.
+            group.add(path == null || path.isEmpty() ? baseUrl + "/" : baseUrl);
+        }
+        configuredGroups = group.size() > 1
+                ? Collections.singletonList(group) : Collections.<List<String>>emptyList();
+    }
+
+    /**
+     * Sets the groups of alternative base urls found in the current manifest.
+     */
+    public void setManifestBaseUrlGroups(List<List<String>> groups) {
+        manifestGroups = groups;
+    }
+
+    /**
+     * Returns the urls to try for {@code uri}, best first, or only {@code uri} if it is not in
+     * any group.
+     */
+    List<Candidate> getCandidates(Uri uri) {
+        String url = uri.toString();
+        List<String> bestGroup = null;
+        String bestPrefix = null;
+        List<List<String>> groups = new ArrayList<>(configuredGroups);
+        groups.addAll(manifestGroups);
+        for (List<String> group : groups) {
+            for (String prefix : group) {
+                // The longest prefix is the base url the request was resolved against.
+                if (url.startsWith(prefix) && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                    bestGroup = group;
+                    bestPrefix = prefix;
+                }
+            }
+        }
+        if (bestGroup == null) {
+            return Collections.singletonList(new Candidate(null, uri, 0));
+        }
+        String suffix = url.substring(bestPrefix.length());
+        long nowMs = SystemClock.elapsedRealtime();
+        List<Candidate> candidates = new ArrayList<>(bestGroup.size());
+        for (String prefix : bestGroup) {
+            candidates.add(new Candidate(prefix,
+                    prefix.equals(bestPrefix) ? uri : Uri.parse(prefix + suffix),
+                    scoreOf(prefix).rank(nowMs)));
+        }
+        // Stable, so preference order breaks ties.
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(a.rank, b.rank);
+            }
+        });
+        return candidates;
+    }
+
+    void onSuccess(Candidate candidate, long latencyMs) {
+        if (candidate.baseUrl != null) {
+            scoreOf(candidate.baseUrl).onSuccess(latencyMs);
+        }
+    }
+
+    void onError(Candidate candidate) {
+        if (candidate.baseUrl != null) {
+            scoreOf(candidate.baseUrl).onError(SystemClock.elapsedRealtime());
+        }
+    }
+
+    private static Score scoreOf(String baseUrl) {
+        Score score = SCORES.get(baseUrl);
+        if (score == null) {
+            Score newScore = new Score();
+            score = SCORES.putIfAbsent(baseUrl, newScore);
+            if (score == null) {
+                score = newScore;
+            }
+        }
+        return score;
+    }
+
+    static final class Candidate {
+
+        /* Null if the url is not in any group. */
+        final String baseUrl;
+        final Uri uri;
+        /* Rank of the base url when the candidates were sorted, lower is better. */
+        final double rank;
+
+        Candidate(String baseUrl, Uri uri, double rank) {
+            this.baseUrl = baseUrl;
+            this.uri = uri;
+            this.rank = rank;
+        }
+    }
+
+    private static final class Score {
+
+        /* Smoothed time to open, 0 until the first sample so every base url gets tried. */
+        private double latencyMs;
+        private int consecutiveErrors;
+        private long excludedUntilMs;
+
+        synchronized double rank(long nowMs) {
+            // Excluded base urls are only tried once the others failed too.
+            return nowMs < excludedUntilMs ? Double.MAX_VALUE : latencyMs;
+        }
+
+        synchronized void onSuccess(long sampleMs) {
+            latencyMs = latencyMs == 0 ? sampleMs
+                    : (1 - LATENCY_SMOOTHING) * latencyMs + LATENCY_SMOOTHING * sampleMs;
+            consecutiveErrors = 0;
+            excludedUntilMs = 0;
+        }
+
+        synchronized void onError(long nowMs) {
+            consecutiveErrors++;
+            excludedUntilMs = nowMs + Math.min(MAX_EXCLUSION_MS,
+                    MIN_EXCLUSION_MS << Math.min(consecutiveErrors - 1, 4));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.brentvatne.exoplayer.cdn;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Opens requests on the best ranked base url of their group, trying the next ones when opening
+ * fails. Failures while reading are reported and rethrown; the loader's retry then opens on
+ * another base url.
+ */
+final class CdnFailoverDataSource implements DataSource {
+
+    private static final String TAG = "CdnFailover";
+
+    private final DataSource upstream;
+    private final CdnFailover cdnFailover;
+
+    private CdnFailover.Candidate candidate;
+
+    CdnFailoverDataSource(DataSource upstream, CdnFailover cdnFailover) {
+        this.upstream = upstream;
+        this.cdnFailover = cdnFailover;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        List<CdnFailover.Candidate> candidates = cdnFailover.getCandidates(dataSpec.uri);
+        IOException lastError = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            CdnFailover.Candidate candidate = candidates.get(i);
+            DataSpec candidateDataSpec = candidate.uri == dataSpec.uri ? dataSpec
+                    : new DataSpec(candidate.uri, dataSpec.postBody, dataSpec.absoluteStreamPosition,
+                    dataSpec.position, dataSpec.length, dataSpec.key, dataSpec.flags);
+            long startMs = SystemClock.elapsedRealtime();
+            try {
+                long length = upstream.open(candidateDataSpec);
+                cdnFailover.onSuccess(candidate, SystemClock.elapsedRealtime() - startMs);
+                this.candidate = candidate;
+                return length;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                cdnFailover.onError(candidate);
+                lastError = e;
+                if (i < candidates.size() - 1) {
+                    Log.w(TAG, "Failing over from " + candidate.baseUrl, e);
+                    closeQuietly();
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        try {
+            return upstream.read(buffer, offset, readLength);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            if (candidate != null) {
+                cdnFailover.onError(candidate);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+        candidate = null;
+        upstream.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            upstream.close();
+        } catch (IOException e) {
+            // Failing over anyway.
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.drm.UnsupportedDrmException;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.UUID;
+
+/**
+ * Process wide pool of idle opened and provisioned {@link FrameworkMediaDrm} instances, keyed by
+ * DRM scheme and license url. Player views lease a DRM session manager from the pool and return it
+ * when their player is released, so player rebuilds, zaps and multi-view screens reuse a
+ * MediaDrm instead of opening a new one each time.
+ * <p>
+ * A {@link DefaultDrmSessionManager} binds itself to the playback looper of the first player
+ * that uses it, so every lease gets a fresh (cheap) session manager on top of a pooled MediaDrm.
+ * A pooled MediaDrm is used by one lease at a time, as it only supports a single event listener:
+ * it leaves the pool while leased and concurrent leases of the same configuration (mosaics, a
+ * preload next to the playing channel) each open their own.
+ */
+public final class DrmSessionManagerPool {
+
+    private static final String TAG = "DrmSessionManagerPool";
+
+    /* Number of unused MediaDrm instances kept open, least recently used ones are released. */
+    private static final int MAX_IDLE_MEDIA_DRMS = 3;
+
+    private static final LinkedList<PooledMediaDrm> idle = new LinkedList<>();
+
+    private DrmSessionManagerPool() {
+    }
+
+    /**
+     * Leases a session manager for the given DRM configuration.
+     *
+     * @param callback The callback used for key and provisioning requests of this lease.
+     * @param eventHandler Handler on which {@code eventListener} is called.
+     * @param eventListener Listener for the DRM events of this lease.
+     * @throws UnsupportedDrmException If the scheme is not supported by the device.
+     */
+    public static Lease acquire(Context context, UUID uuid, String licenseUrl,
+                                MediaDrmCallback callback, Handler eventHandler,
+                                DefaultDrmSessionManager.EventListener eventListener)
+            throws UnsupportedDrmException {
+        String key = keyFor(uuid, licenseUrl);
+        PooledMediaDrm pooledMediaDrm = obtain(key, uuid);
+        OfflineLicenseDrmSessionManager sessionManager = new OfflineLicenseDrmSessionManager(
+                uuid, key, pooledMediaDrm.mediaDrm, callback,
+                OfflineLicenseStore.getInstance(context), eventHandler, eventListener);
+        return new Lease(pooledMediaDrm, sessionManager);
+    }
+
+    static String keyFor(UUID uuid, String licenseUrl) {
+        return uuid + "|" + licenseUrl;
+    }
+
+    /**
+     * Takes an idle MediaDrm of {@code key} out of the pool or opens one, for exclusive use until
+     * it is passed to {@link #recycle}.
+     */
+    static synchronized PooledMediaDrm obtain(String key, UUID uuid) throws UnsupportedDrmException {
+        for (Iterator<PooledMediaDrm> iterator = idle.iterator(); iterator.hasNext(); ) {
+            PooledMediaDrm candidate = iterator.next();
+            if (candidate.key.equals(key)) {
+                iterator.remove();
+                Log.d(TAG, "Reusing MediaDrm " + key);
+                return candidate;
+            }
+        }
+        Log.d(TAG, "Opening MediaDrm " + key + ", " + idle.size() + " idle");
+        return new PooledMediaDrm(key, FrameworkMediaDrm.newInstance(uuid));
+    }
+
+    /**
+     * Returns a MediaDrm to the pool, releasing the least recently used idle ones over the limit.
+     */
+    static synchronized void recycle(PooledMediaDrm pooledMediaDrm) {
+        idle.addFirst(pooledMediaDrm);
+        while (idle.size() > MAX_IDLE_MEDIA_DRMS) {
+            PooledMediaDrm evicted = idle.removeLast();
+            evicted.mediaDrm.release();
+            Log.d(TAG, "Released MediaDrm " + evicted.key);
+        }
+    }
+
+    static final class PooledMediaDrm {
+
+        final String key;
+        final FrameworkMediaDrm mediaDrm;
+
+        PooledMediaDrm(String key, FrameworkMediaDrm mediaDrm) {
+            this.key = key;
+            this.mediaDrm = mediaDrm;
+        }
+    }
+
+    /**
+     * A session manager leased from the pool. Must be released once the player using it has been
+     * released.
+     */
+    public static final class Lease {
+
+        private final PooledMediaDrm pooledMediaDrm;
+        private final OfflineLicenseDrmSessionManager sessionManager;
+        private boolean released;
+
+        private Lease(PooledMediaDrm pooledMediaDrm, OfflineLicenseDrmSessionManager sessionManager) {
+            this.pooledMediaDrm = pooledMediaDrm;
+            this.sessionManager = sessionManager;
+        }
+
+        public DrmSessionManager<FrameworkMediaCrypto> getSessionManager() {
+            return sessionManager;
+        }
+
+        public void setRenewalLeadTimeMs(long leadTimeMs) {
+            sessionManager.setRenewalLeadTimeMs(leadTimeMs);
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            recycle(pooledMediaDrm);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Latency histograms of the phases of license acquisition for one player session.
+ * <p>
+ * Transports report connection level phases for the request running on the current thread, see
+ * {@link #setCurrent(DrmTimings)}. OkHttp clients report them through {@link #EVENT_LISTENER_FACTORY}.
+ */
+public final class DrmTimings {
+
+    public static final int PHASE_REQUEST_BUILD = 0;
+    public static final int PHASE_DNS = 1;
+    public static final int PHASE_CONNECT = 2;
+    public static final int PHASE_TLS = 3;
+    public static final int PHASE_TTFB = 4;
+    public static final int PHASE_NETWORK = 5;
+    public static final int PHASE_RESPONSE_PARSE = 6;
+    public static final int PHASE_PROVIDE_KEY_RESPONSE = 7;
+    public static final int PHASE_PROVISION = 8;
+
+    public static final String[] PHASE_NAMES = {
+            "requestBuild",
+            "dns",
+            "connect",
+            "tls",
+            "ttfb",
+            "network",
+            "responseParse",
+            "provideKeyResponse",
+            "provision",
+    };
+
+    /* Upper bounds (inclusive) of the histogram buckets, the last bucket is unbounded. */
+    public static final long[] BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500};
+
+    private static final ThreadLocal<DrmTimings> current = new ThreadLocal<>();
+
+    private final int[][] buckets = new int[PHASE_NAMES.length][BUCKET_BOUNDS_MS.length + 1];
+    private final int[] counts = new int[PHASE_NAMES.length];
+    private final long[] sumsMs = new long[PHASE_NAMES.length];
+    private final long[] minsMs = new long[PHASE_NAMES.length];
+    private final long[] maxsMs = new long[PHASE_NAMES.length];
+
+    /* Phase start marks of the request in flight on the thread this instance is current on. */
+    private long dnsStartMs;
+    private long connectStartMs;
+    private long tlsStartMs;
+    private long requestStartMs;
+
+    private long keyResponseReturnedAtMs;
+
+    public DrmTimings() {
+        Arrays.fill(minsMs, Long.MAX_VALUE);
+    }
+
+    public static DrmTimings current() {
+        return current.get();
+    }
+
+    /**
+     * Makes {@code timings} receive the connection phases of requests made on this thread, pass
+     * null once the request is done.
+     */
+    public static void setCurrent(DrmTimings timings) {
+        if (timings == null) {
+            current.remove();
+        } else {
+            current.set(timings);
+        }
+    }
+
+    public static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void record(int phase, long durationMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && durationMs > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets[phase][bucket]++;
+        counts[phase]++;
+        sumsMs[phase] += durationMs;
+        minsMs[phase] = Math.min(minsMs[phase], durationMs);
+        maxsMs[phase] = Math.max(maxsMs[phase], durationMs);
+    }
+
+    public void recordSince(int phase, long startMs) {
+        record(phase, now() - startMs);
+    }
+
+    /**
+     * Called when a key response is handed back to the CDM, {@link #onKeysLoaded()} completes the
+     * provide key response phase.
+     */
+    public synchronized void onKeyResponseReturned() {
+        if (keyResponseReturnedAtMs == 0) {
+            keyResponseReturnedAtMs = now();
+        }
+    }
+
+    public void onKeysLoaded() {
+        long returnedAtMs;
+        synchronized (this) {
+            returnedAtMs = keyResponseReturnedAtMs;
+            keyResponseReturnedAtMs = 0;
+        }
+        if (returnedAtMs != 0) {
+            recordSince(PHASE_PROVIDE_KEY_RESPONSE, returnedAtMs);
+        }
+    }
+
+    public synchronized int getCount(int phase) {
+        return counts[phase];
+    }
+
+    public synchronized long getMinMs(int phase) {
+        return counts[phase] == 0 ? 0 : minsMs[phase];
+    }
+
+    public synchronized long getMaxMs(int phase) {
+        return maxsMs[phase];
+    }
+
+    public synchronized double getMeanMs(int phase) {
+        return counts[phase] == 0 ? 0 : (double) sumsMs[phase] / counts[phase];
+    }
+
+    public synchronized int[] getBuckets(int phase) {
+        return buckets[phase].clone();
+    }
+
+    public static final EventListener.Factory EVENT_LISTENER_FACTORY = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return current() != null ? new TimingEventListener() : EventListener.NONE;
+        }
+    };
+
+    private static final class TimingEventListener extends EventListener {
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            DrmTimings timings = current();
+            if (timings != null) {
+                timings.dnsStartMs = now();
+            }
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            DrmTimings timings = current();
+            if (timings != null && timings.dnsStartMs != 0) {
+                timings.recordSince(PHASE_DNS, timings.dnsStartMs);
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            DrmTimings timings = current();
+            if (timings != null) {
+                timings.connectStartMs = now();
+            }
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            DrmTimings timings = current();
+            if (timings != null) {
+                timings.tlsStartMs = now();
+            }
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            DrmTimings timings = current();
+            if (timings != null && timings.tlsStartMs != 0) {
+                timings.recordSince(PHASE_TLS, timings.tlsStartMs);
+            }
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                               Protocol protocol) {
+            DrmTimings timings = current();
+            if (timings != null && timings.connectStartMs != 0) {
+                timings.recordSince(PHASE_CONNECT, timings.connectStartMs);
+            }
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            DrmTimings timings = current();
+            if (timings != null) {
+                timings.requestStartMs = now();
+            }
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            DrmTimings timings = current();
+            if (timings != null && timings.requestStartMs != 0) {
+                timings.recordSince(PHASE_TTFB, timings.requestStartMs);
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            DrmTimings timings = current();
+            if (timings != null) {
+                timings.dnsStartMs = 0;
+                timings.connectStartMs = 0;
+                timings.tlsStartMs = 0;
+                timings.requestStartMs = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.source.dash.DashUtil;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Acquires licenses for DASH content ahead of playback. The PSSH is taken from the manifest's
+ * ContentProtection elements (or the init segment when the manifest has none) and a persistent
+ * license is stored in the {@link OfflineLicenseStore}, where the player's session manager picks
+ * it up on the next matching setSrc.
+ * <p>
+ * Prefetched entries are kept in a bounded LRU; evicting one also drops its stored key set and
+ * releases it from the CDM, unless another prefetched manifest shares it.
+ */
+public final class LicensePrefetcher {
+
+    private static final String TAG = "LicensePrefetcher";
+
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    public interface Callback {
+
+        void onPrefetched(boolean licenseStored);
+
+        void onError(Exception e);
+    }
+
+    private static LicensePrefetcher instance;
+
+    private final OfflineLicenseStore store;
+    /* Prefetched entries by manifest url. */
+    private final LinkedHashMap<String, Entry> prefetched;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private LicensePrefetcher(OfflineLicenseStore store) {
+        this.store = store;
+        this.prefetched = new LinkedHashMap<String, Entry>(DEFAULT_MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                Log.d(TAG, "Evicting prefetched license " + eldest.getKey());
+                remove(eldest.getKey());
+                release(eldest.getValue());
+                return false;
+            }
+        };
+    }
+
+    public static synchronized LicensePrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new LicensePrefetcher(OfflineLicenseStore.getInstance(context));
+        }
+        return instance;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Prefetches the license of a DASH manifest on a background thread.
+     *
+     * @param manifestDataSource Data source used to load the manifest and, if needed, the
+     *     init segment.
+     * @param callback Called on the background thread once done.
+     */
+    public void prefetch(final String manifestUrl, final UUID uuid, final String licenseUrl,
+                         final MediaDrmCallback drmCallback, final DataSource manifestDataSource,
+                         final Callback callback) {
+        OfflineLicenseDownloader.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onPrefetched(prefetchInternal(manifestUrl, uuid, licenseUrl,
+                            drmCallback, manifestDataSource));
+                } catch (Exception e) {
+                    Log.w(TAG, "License prefetch failed for " + manifestUrl, e);
+                    callback.onError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the stored key set of an evicted entry and releases it from the CDM. Called with the
+     * lock held.
+     */
+    private void release(Entry entry) {
+        for (Entry other : prefetched.values()) {
+            if (other.key.equals(entry.key)) {
+                return;
+            }
+        }
+        byte[] keySetId = store.take(entry.key);
+        if (keySetId != null) {
+            OfflineLicenseDownloader.releaseInBackground(entry.uuid, entry.poolKey,
+                    entry.drmCallback, entry.key, keySetId);
+        }
+    }
+
+    private boolean prefetchInternal(String manifestUrl, UUID uuid, String licenseUrl,
+                                     MediaDrmCallback drmCallback, DataSource manifestDataSource)
+            throws Exception {
+        String key;
+        synchronized (this) {
+            Entry entry = prefetched.get(manifestUrl);
+            key = entry != null ? entry.key : null;
+        }
+        String poolKey = DrmSessionManagerPool.keyFor(uuid, licenseUrl);
+        if (key == null) {
+            DashManifest manifest = DashUtil.loadManifest(manifestDataSource, Uri.parse(manifestUrl));
+            DrmInitData drmInitData = DashUtil.loadDrmInitData(manifestDataSource, manifest.getPeriod(0));
+            key = OfflineLicenseStore.keyFor(uuid, drmInitData);
+            if (key == null) {
+                Log.d(TAG, "No " + uuid + " protection in " + manifestUrl);
+                return false;
+            }
+            if (store.get(key) == null) {
+                OfflineLicenseDownloader.download(uuid, poolKey, drmCallback, store, key, drmInitData);
+                // Joins a download of the player's already in flight, the key set it stores is
+                // tracked here all the same.
+                if (store.get(key) == null) {
+                    return false;
+                }
+            }
+        } else if (store.get(key) == null) {
+            // Stored key set expired since the last prefetch, start over.
+            synchronized (this) {
+                prefetched.remove(manifestUrl);
+            }
+            return prefetchInternal(manifestUrl, uuid, licenseUrl, drmCallback, manifestDataSource);
+        }
+        synchronized (this) {
+            prefetched.put(manifestUrl, new Entry(key, uuid, poolKey, drmCallback));
+        }
+        return true;
+    }
+
+    private static final class Entry {
+
+        /* Key of the key set in the OfflineLicenseStore. */
+        final String key;
+        final UUID uuid;
+        final String poolKey;
+        final MediaDrmCallback drmCallback;
+
+        Entry(String key, UUID uuid, String poolKey, MediaDrmCallback drmCallback) {
+            this.key = key;
+            this.uuid = uuid;
+            this.poolKey = poolKey;
+            this.drmCallback = drmCallback;
+        }
+    }
+}
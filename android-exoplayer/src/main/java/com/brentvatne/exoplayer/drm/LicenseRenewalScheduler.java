@@ -0,0 +1,188 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
+import com.google.android.exoplayer2.util.Util;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the license of an open DRM session before it expires, so long running sessions do not
+ * fail on expiry and recover through a player error.
+ * <p>
+ * The remaining license and playback durations are read from the CDM once keys are loaded, and a
+ * new key request for the same session is made {@link #DEFAULT_LEAD_TIME_MS} (or as configured)
+ * before the earliest of them runs out. The response is provided to the open session, playback is
+ * not interrupted. Failures are retried with exponential backoff while the session is open.
+ */
+final class LicenseRenewalScheduler {
+
+    private static final String TAG = "LicenseRenewal";
+
+    static final long DEFAULT_LEAD_TIME_MS = 60 * 1000;
+
+    private static final long INITIAL_RETRY_DELAY_MS = 5 * 1000;
+    private static final long MAX_RETRY_DELAY_MS = 2 * 60 * 1000;
+
+    private static final String PROPERTY_LICENSE_DURATION_REMAINING = "LicenseDurationRemaining";
+    private static final String PROPERTY_PLAYBACK_DURATION_REMAINING = "PlaybackDurationRemaining";
+
+    /* Shared by all sessions, renewals are rare and short. */
+    private static final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+    interface Listener {
+
+        /**
+         * Called on the executor thread once a renewed license has been provided to the session.
+         */
+        void onLicenseRenewed();
+    }
+
+    private final UUID uuid;
+    private final SessionTrackingMediaDrm mediaDrm;
+    private final MediaDrmCallback callback;
+    private final Listener listener;
+
+    private long leadTimeMs = DEFAULT_LEAD_TIME_MS;
+    private DrmInitData.SchemeData schemeData;
+    private ScheduledFuture<?> pendingRenewal;
+    private long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+
+    LicenseRenewalScheduler(UUID uuid, SessionTrackingMediaDrm mediaDrm, MediaDrmCallback callback,
+                            Listener listener) {
+        this.uuid = uuid;
+        this.mediaDrm = mediaDrm;
+        this.callback = callback;
+        this.listener = listener;
+    }
+
+    synchronized void setLeadTimeMs(long leadTimeMs) {
+        this.leadTimeMs = Math.max(0, leadTimeMs);
+    }
+
+    /**
+     * Sets the init data of the session whose license is renewed.
+     */
+    synchronized void setDrmInitData(DrmInitData drmInitData) {
+        schemeData = drmInitData != null ? drmInitData.get(uuid) : null;
+    }
+
+    /**
+     * (Re)schedules the renewal from the remaining license duration of the open session. Does
+     * nothing if the session has no known expiry.
+     */
+    synchronized void schedule() {
+        cancel();
+        byte[] sessionId = mediaDrm.getOpenSessionId();
+        if (sessionId == null || schemeData == null) {
+            return;
+        }
+        long remainingSec = getRemainingSec(sessionId);
+        if (remainingSec == C.TIME_UNSET) {
+            return;
+        }
+        long delayMs = Math.max(0, remainingSec * 1000 - leadTimeMs);
+        Log.d(TAG, "License expires in " + remainingSec + "s, renewing in " + delayMs + "ms");
+        retryDelayMs = INITIAL_RETRY_DELAY_MS;
+        scheduleRenewal(delayMs);
+    }
+
+    synchronized void cancel() {
+        if (pendingRenewal != null) {
+            pendingRenewal.cancel(false);
+            pendingRenewal = null;
+        }
+    }
+
+    private void scheduleRenewal(long delayMs) {
+        pendingRenewal = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void renew() {
+        byte[] sessionId;
+        DrmInitData.SchemeData schemeData;
+        synchronized (this) {
+            pendingRenewal = null;
+            sessionId = mediaDrm.getOpenSessionId();
+            schemeData = this.schemeData;
+        }
+        if (sessionId == null || schemeData == null) {
+            return;
+        }
+        try {
+            byte[] initData = schemeData.data;
+            if (Util.SDK_INT < 21 && C.WIDEVINE_UUID.equals(uuid)) {
+                // Prior to Lollipop the Widevine CDM expects the scheme specific data only.
+                byte[] psshData = PsshAtomUtil.parseSchemeSpecificData(initData, uuid);
+                if (psshData != null) {
+                    initData = psshData;
+                }
+            }
+            ExoMediaDrm.KeyRequest request = mediaDrm.getKeyRequest(sessionId, initData,
+                    schemeData.mimeType, ExoMediaDrm.KEY_TYPE_STREAMING, null);
+            byte[] response = callback.executeKeyRequest(uuid, request);
+            mediaDrm.provideKeyResponse(sessionId, response);
+            Log.d(TAG, "License renewed");
+            listener.onLicenseRenewed();
+        } catch (Exception e) {
+            synchronized (this) {
+                if (pendingRenewal != null || mediaDrm.getOpenSessionId() != sessionId) {
+                    // Rescheduled or session closed meanwhile.
+                    return;
+                }
+                Log.w(TAG, "License renewal failed, retrying in " + retryDelayMs + "ms", e);
+                scheduleRenewal(retryDelayMs);
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Returns the earliest of the remaining license and playback durations, or
+     * {@link C#TIME_UNSET} if neither is limited.
+     */
+    private long getRemainingSec(byte[] sessionId) {
+        Map<String, String> keyStatus;
+        try {
+            keyStatus = mediaDrm.queryKeyStatus(sessionId);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to query key status", e);
+            return C.TIME_UNSET;
+        }
+        if (keyStatus == null) {
+            return C.TIME_UNSET;
+        }
+        long remainingSec = Math.min(
+                parseDurationSec(keyStatus.get(PROPERTY_LICENSE_DURATION_REMAINING)),
+                parseDurationSec(keyStatus.get(PROPERTY_PLAYBACK_DURATION_REMAINING)));
+        return remainingSec == Long.MAX_VALUE ? C.TIME_UNSET : remainingSec;
+    }
+
+    private static long parseDurationSec(String value) {
+        if (value == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            long durationSec = Long.parseLong(value);
+            // Zero and negative values mean unlimited or not applicable.
+            return durationSec > 0 ? durationSec : Long.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
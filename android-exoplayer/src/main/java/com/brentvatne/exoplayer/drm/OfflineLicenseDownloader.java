@@ -0,0 +1,131 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.util.Log;
+import android.util.Pair;
+
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads persistent licenses into the {@link OfflineLicenseStore} and releases dropped ones
+ * from the CDM, using a MediaDrm leased from the {@link DrmSessionManagerPool}. At most one
+ * download per store key runs at a time, later callers wait for its result.
+ */
+final class OfflineLicenseDownloader {
+
+    private static final String TAG = "OfflineLicenseDownload";
+
+    static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private static final SingleFlight<Boolean> inFlightDownloads = new SingleFlight<>();
+
+    private OfflineLicenseDownloader() {
+    }
+
+    static void downloadInBackground(final UUID uuid, final String poolKey,
+                                     final MediaDrmCallback callback,
+                                     final OfflineLicenseStore store, final String key,
+                                     final DrmInitData drmInitData) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                download(uuid, poolKey, callback, store, key, drmInitData);
+            }
+        });
+    }
+
+    /**
+     * Downloads and stores a persistent license, blocking until done. Joins the download of
+     * {@code key} already in flight, if any.
+     *
+     * @return Whether a valid key set for {@code key} is stored afterwards.
+     */
+    static boolean download(final UUID uuid, final String poolKey, final MediaDrmCallback callback,
+                            final OfflineLicenseStore store, final String key,
+                            final DrmInitData drmInitData) {
+        try {
+            return inFlightDownloads.execute(key, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return downloadInternal(uuid, poolKey, callback, store, key, drmInitData);
+                }
+            });
+        } catch (Exception e) {
+            Log.w(TAG, "Offline license download failed " + key, e);
+            return false;
+        }
+    }
+
+    private static boolean downloadInternal(UUID uuid, String poolKey, MediaDrmCallback callback,
+                                            OfflineLicenseStore store, String key,
+                                            DrmInitData drmInitData) {
+        DrmSessionManagerPool.PooledMediaDrm pooledMediaDrm = null;
+        OfflineLicenseHelper<FrameworkMediaCrypto> helper = null;
+        try {
+            if (store.get(key) != null) {
+                return true;
+            }
+            pooledMediaDrm = DrmSessionManagerPool.obtain(poolKey, uuid);
+            helper = new OfflineLicenseHelper<>(uuid, pooledMediaDrm.mediaDrm, callback, null);
+            byte[] keySetId = helper.downloadLicense(drmInitData);
+            Pair<Long, Long> remainingSec = helper.getLicenseDurationRemainingSec(keySetId);
+            if (remainingSec.first == null || remainingSec.first <= 0) {
+                // Unknown or zero duration, the server did not grant a persistent license.
+                Log.d(TAG, "License not persistable " + key);
+                return false;
+            }
+            store.put(key, keySetId, OfflineLicenseStore.expiryFromRemainingSec(remainingSec.first));
+            Log.d(TAG, "Stored offline license " + key);
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "Offline license download failed " + key, e);
+            return false;
+        } finally {
+            if (helper != null) {
+                helper.release();
+            }
+            if (pooledMediaDrm != null) {
+                DrmSessionManagerPool.recycle(pooledMediaDrm);
+            }
+        }
+    }
+
+    /**
+     * Releases a persistent license from the CDM on a background thread, so it stops occupying
+     * the device's license storage. This is a MODE_RELEASE key request, confirmed by the license
+     * server through {@code callback}.
+     */
+    static void releaseInBackground(final UUID uuid, final String poolKey,
+                                    final MediaDrmCallback callback, final String key,
+                                    final byte[] keySetId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DrmSessionManagerPool.PooledMediaDrm pooledMediaDrm = null;
+                OfflineLicenseHelper<FrameworkMediaCrypto> helper = null;
+                try {
+                    pooledMediaDrm = DrmSessionManagerPool.obtain(poolKey, uuid);
+                    helper = new OfflineLicenseHelper<>(uuid, pooledMediaDrm.mediaDrm, callback, null);
+                    helper.releaseLicense(keySetId);
+                    Log.d(TAG, "Released offline license " + key);
+                } catch (Exception e) {
+                    Log.w(TAG, "Offline license release failed " + key, e);
+                } finally {
+                    if (helper != null) {
+                        helper.release();
+                    }
+                    if (pooledMediaDrm != null) {
+                        DrmSessionManagerPool.recycle(pooledMediaDrm);
+                    }
+                }
+            }
+        });
+    }
+}
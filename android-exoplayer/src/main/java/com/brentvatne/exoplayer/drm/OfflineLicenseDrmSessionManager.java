@@ -0,0 +1,179 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+
+import java.util.UUID;
+
+/**
+ * A {@link DrmSessionManager} that restores offline key sets from an {@link OfflineLicenseStore}
+ * and only goes to the license server when no valid key set is stored. On a miss the session is
+ * served with a streaming license as before, while a persistent license for the same content is
+ * downloaded in the background for the next session.
+ * <p>
+ * The license of the open session is renewed ahead of its expiry, see
+ * {@link LicenseRenewalScheduler}.
+ */
+public class OfflineLicenseDrmSessionManager implements DrmSessionManager<FrameworkMediaCrypto>,
+        DefaultDrmSessionManager.EventListener, LicenseRenewalScheduler.Listener {
+
+    private static final String TAG = "OfflineLicenseDrm";
+
+    private final UUID uuid;
+    private final String poolKey;
+    private final MediaDrmCallback callback;
+    private final OfflineLicenseStore store;
+    private final SessionTrackingMediaDrm trackingMediaDrm;
+    private final DefaultDrmSessionManager.EventListener eventListener;
+    private final Handler eventHandler;
+    private final LicenseRenewalScheduler renewalScheduler;
+
+    /*
+     * Manager of the open sessions. DefaultDrmSessionManager only accepts a mode change without
+     * open sessions, so its mode is chosen once, on the first acquire, and a manager restoring a
+     * key set is replaced with a fresh one instead of being switched back. Accessed on the
+     * playback thread.
+     */
+    private DefaultDrmSessionManager<FrameworkMediaCrypto> delegate;
+    private boolean delegateRestores;
+    private int openSessionCount;
+
+    /* Error of a rejected stored key set; not reported since playback recovers from it. */
+    private volatile Exception suppressedError;
+
+    /**
+     * @param poolKey Key of the {@link DrmSessionManagerPool} entry {@code mediaDrm} belongs to,
+     *     background downloads lease their MediaDrm from the same entry.
+     */
+    public OfflineLicenseDrmSessionManager(UUID uuid, String poolKey, FrameworkMediaDrm mediaDrm,
+                                           MediaDrmCallback callback, OfflineLicenseStore store,
+                                           Handler eventHandler,
+                                           DefaultDrmSessionManager.EventListener eventListener) {
+        this.uuid = uuid;
+        this.poolKey = poolKey;
+        this.callback = callback;
+        this.store = store;
+        this.eventListener = eventListener;
+        this.eventHandler = eventHandler;
+        this.trackingMediaDrm = new SessionTrackingMediaDrm(mediaDrm);
+        this.renewalScheduler = new LicenseRenewalScheduler(uuid, trackingMediaDrm, callback, this);
+        this.delegate = newDelegate();
+    }
+
+    private DefaultDrmSessionManager<FrameworkMediaCrypto> newDelegate() {
+        // Also takes over the MediaDrm event listener from the previous manager.
+        return new DefaultDrmSessionManager<>(uuid, trackingMediaDrm, callback, null, eventHandler,
+                this);
+    }
+
+    /**
+     * Sets how long before license expiry the license of the open session is renewed.
+     */
+    public void setRenewalLeadTimeMs(long leadTimeMs) {
+        renewalScheduler.setLeadTimeMs(leadTimeMs);
+    }
+
+    @Override
+    public boolean canAcquireSession(DrmInitData drmInitData) {
+        return delegate.canAcquireSession(drmInitData);
+    }
+
+    @Override
+    public DrmSession<FrameworkMediaCrypto> acquireSession(Looper playbackLooper,
+                                                           DrmInitData drmInitData) {
+        renewalScheduler.setDrmInitData(drmInitData);
+        if (openSessionCount > 0) {
+            // Further renderers of the same content share the mode of the first one.
+            openSessionCount++;
+            return delegate.acquireSession(playbackLooper, drmInitData);
+        }
+        String key = OfflineLicenseStore.keyFor(uuid, drmInitData);
+        byte[] keySetId = key != null ? store.get(key) : null;
+        if (keySetId != null) {
+            delegate = newDelegate();
+            delegate.setMode(DefaultDrmSessionManager.MODE_PLAYBACK, keySetId);
+            delegateRestores = true;
+            DrmSession<FrameworkMediaCrypto> session = delegate.acquireSession(playbackLooper, drmInitData);
+            if (session.getState() != DrmSession.STATE_ERROR) {
+                Log.d(TAG, "Restored offline license " + key);
+                openSessionCount = 1;
+                return session;
+            }
+            // The CDM no longer accepts the stored key set, forget it and use the network.
+            Log.w(TAG, "Offline license rejected " + key, session.getError());
+            suppressedError = session.getError() != null ? (Exception) session.getError().getCause() : null;
+            delegate.releaseSession(session);
+            store.remove(key);
+        }
+        if (delegateRestores) {
+            delegate = newDelegate();
+            delegateRestores = false;
+        }
+        DrmSession<FrameworkMediaCrypto> session = delegate.acquireSession(playbackLooper, drmInitData);
+        openSessionCount = 1;
+        if (key != null) {
+            OfflineLicenseDownloader.downloadInBackground(uuid, poolKey, callback, store, key,
+                    drmInitData);
+        }
+        return session;
+    }
+
+    @Override
+    public void releaseSession(DrmSession<FrameworkMediaCrypto> drmSession) {
+        if (--openSessionCount <= 0) {
+            openSessionCount = 0;
+            renewalScheduler.cancel();
+        }
+        delegate.releaseSession(drmSession);
+    }
+
+    // LicenseRenewalScheduler.Listener implementation
+
+    @Override
+    public void onLicenseRenewed() {
+        // Reported like any other key load, which also schedules the next renewal.
+        eventHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onDrmKeysLoaded();
+            }
+        });
+    }
+
+    // DefaultDrmSessionManager.EventListener implementation
+
+    @Override
+    public void onDrmKeysLoaded() {
+        renewalScheduler.schedule();
+        eventListener.onDrmKeysLoaded();
+    }
+
+    @Override
+    public void onDrmSessionManagerError(Exception e) {
+        if (e != null && e == suppressedError) {
+            suppressedError = null;
+            return;
+        }
+        eventListener.onDrmSessionManagerError(e);
+    }
+
+    @Override
+    public void onDrmKeysRestored() {
+        renewalScheduler.schedule();
+        eventListener.onDrmKeysRestored();
+    }
+
+    @Override
+    public void onDrmKeysRemoved() {
+        eventListener.onDrmKeysRemoved();
+    }
+}
@@ -0,0 +1,132 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import com.google.android.exoplayer2.drm.DrmInitData;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * Disk backed store of offline key set ids, keyed by DRM scheme and PSSH of the content.
+ * Every entry carries the wall clock time at which its license expires, expired key sets are
+ * never handed out.
+ */
+public final class OfflineLicenseStore {
+
+    private static final String TAG = "OfflineLicenseStore";
+
+    private static final String PREFERENCES_NAME = "RCTVideoOfflineLicenses";
+
+    /* Key sets expiring within this margin are treated as expired, so playback never starts on a
+     * license that runs out before the first segment is decrypted. */
+    private static final long EXPIRY_MARGIN_MS = 60 * 1000;
+
+    private static OfflineLicenseStore instance;
+
+    private final SharedPreferences preferences;
+
+    private OfflineLicenseStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized OfflineLicenseStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new OfflineLicenseStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the store key for the given content.
+     *
+     * @return The key, or null if {@code drmInitData} holds no scheme data for {@code uuid}.
+     */
+    public static String keyFor(UUID uuid, DrmInitData drmInitData) {
+        DrmInitData.SchemeData schemeData = drmInitData != null ? drmInitData.get(uuid) : null;
+        if (schemeData == null || schemeData.data == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(uuid.toString().getBytes(Charset.forName("US-ASCII")));
+            digest.update(schemeData.data);
+            return Base64.encodeToString(digest.digest(), Base64.NO_WRAP | Base64.URL_SAFE);
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "SHA-1 unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The stored key set id, or null if there is none or it has expired.
+     */
+    public synchronized byte[] get(String key) {
+        String entry = preferences.getString(key, null);
+        if (entry == null) {
+            return null;
+        }
+        int separator = entry.indexOf(':');
+        long expiresAtMs;
+        try {
+            expiresAtMs = Long.parseLong(entry.substring(0, separator));
+        } catch (RuntimeException e) {
+            remove(key);
+            return null;
+        }
+        if (expiresAtMs - EXPIRY_MARGIN_MS <= System.currentTimeMillis()) {
+            Log.d(TAG, "Offline license expired " + key);
+            remove(key);
+            return null;
+        }
+        return Base64.decode(entry.substring(separator + 1), Base64.NO_WRAP);
+    }
+
+    /**
+     * @param expiresAtMs Wall clock time at which the license expires, {@link Long#MAX_VALUE} if
+     *     it does not expire.
+     */
+    public synchronized void put(String key, byte[] keySetId, long expiresAtMs) {
+        preferences.edit()
+                .putString(key, expiresAtMs + ":" + Base64.encodeToString(keySetId, Base64.NO_WRAP))
+                .apply();
+    }
+
+    public synchronized void remove(String key) {
+        preferences.edit().remove(key).apply();
+    }
+
+    /**
+     * Removes an entry, expired or not, so its key set can be released from the CDM.
+     *
+     * @return The key set id that was stored, or null if there was none.
+     */
+    public synchronized byte[] take(String key) {
+        String entry = preferences.getString(key, null);
+        if (entry == null) {
+            return null;
+        }
+        remove(key);
+        try {
+            return Base64.decode(entry.substring(entry.indexOf(':') + 1), Base64.NO_WRAP);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a remaining license duration as reported by the CDM into an absolute expiry time.
+     */
+    public static long expiryFromRemainingSec(long remainingSec) {
+        long nowMs = System.currentTimeMillis();
+        if (remainingSec >= (Long.MAX_VALUE - nowMs) / 1000) {
+            return Long.MAX_VALUE;
+        }
+        return nowMs + remainingSec * 1000;
+    }
+}
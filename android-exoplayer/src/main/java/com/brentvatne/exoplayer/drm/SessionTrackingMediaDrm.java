@@ -0,0 +1,126 @@
+package com.brentvatne.exoplayer.drm;
+
+import android.media.DeniedByServerException;
+import android.media.MediaCryptoException;
+import android.media.MediaDrmException;
+import android.media.NotProvisionedException;
+
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forwards to a {@link ExoMediaDrm} and remembers the last session it opened that is still open,
+ * which {@link com.google.android.exoplayer2.drm.DrmSession} does not expose.
+ */
+final class SessionTrackingMediaDrm implements ExoMediaDrm<FrameworkMediaCrypto> {
+
+    private final ExoMediaDrm<FrameworkMediaCrypto> mediaDrm;
+
+    private volatile byte[] openSessionId;
+
+    SessionTrackingMediaDrm(ExoMediaDrm<FrameworkMediaCrypto> mediaDrm) {
+        this.mediaDrm = mediaDrm;
+    }
+
+    /**
+     * Returns the id of the last opened session, or null if it has been closed since.
+     */
+    byte[] getOpenSessionId() {
+        return openSessionId;
+    }
+
+    @Override
+    public void setOnEventListener(OnEventListener<? super FrameworkMediaCrypto> listener) {
+        mediaDrm.setOnEventListener(listener);
+    }
+
+    @Override
+    public void setOnKeyStatusChangeListener(
+            OnKeyStatusChangeListener<? super FrameworkMediaCrypto> listener) {
+        mediaDrm.setOnKeyStatusChangeListener(listener);
+    }
+
+    @Override
+    public byte[] openSession() throws MediaDrmException {
+        byte[] sessionId = mediaDrm.openSession();
+        openSessionId = sessionId;
+        return sessionId;
+    }
+
+    @Override
+    public void closeSession(byte[] sessionId) {
+        if (Arrays.equals(sessionId, openSessionId)) {
+            openSessionId = null;
+        }
+        mediaDrm.closeSession(sessionId);
+    }
+
+    @Override
+    public KeyRequest getKeyRequest(byte[] scope, byte[] init, String mimeType, int keyType,
+                                    HashMap<String, String> optionalParameters)
+            throws NotProvisionedException {
+        return mediaDrm.getKeyRequest(scope, init, mimeType, keyType, optionalParameters);
+    }
+
+    @Override
+    public byte[] provideKeyResponse(byte[] scope, byte[] response)
+            throws NotProvisionedException, DeniedByServerException {
+        return mediaDrm.provideKeyResponse(scope, response);
+    }
+
+    @Override
+    public ProvisionRequest getProvisionRequest() {
+        return mediaDrm.getProvisionRequest();
+    }
+
+    @Override
+    public void provideProvisionResponse(byte[] response) throws DeniedByServerException {
+        mediaDrm.provideProvisionResponse(response);
+    }
+
+    @Override
+    public Map<String, String> queryKeyStatus(byte[] sessionId) {
+        return mediaDrm.queryKeyStatus(sessionId);
+    }
+
+    @Override
+    public void restoreKeys(byte[] sessionId, byte[] keySetId) {
+        mediaDrm.restoreKeys(sessionId, keySetId);
+    }
+
+    /**
+     * Does nothing, the wrapped instance belongs to the {@link DrmSessionManagerPool}.
+     */
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public String getPropertyString(String propertyName) {
+        return mediaDrm.getPropertyString(propertyName);
+    }
+
+    @Override
+    public byte[] getPropertyByteArray(String propertyName) {
+        return mediaDrm.getPropertyByteArray(propertyName);
+    }
+
+    @Override
+    public void setPropertyString(String propertyName, String value) {
+        mediaDrm.setPropertyString(propertyName, value);
+    }
+
+    @Override
+    public void setPropertyByteArray(String propertyName, byte[] value) {
+        mediaDrm.setPropertyByteArray(propertyName, value);
+    }
+
+    @Override
+    public FrameworkMediaCrypto createMediaCrypto(byte[] initData) throws MediaCryptoException {
+        return mediaDrm.createMediaCrypto(initData);
+    }
+}
@@ -0,0 +1,48 @@
+package com.brentvatne.exoplayer.drm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Table of in-flight calls. Concurrent callers executing a call under the same key share a single
+ * execution, the first caller runs it and all others wait for and receive its result or error.
+ * Keys are forgotten as soon as the call completes, results are not cached.
+ */
+public final class SingleFlight<V> {
+
+    private final Map<String, FutureTask<V>> inFlight = new HashMap<>();
+
+    public V execute(String key, Callable<V> call) throws Exception {
+        FutureTask<V> task;
+        boolean leader = false;
+        synchronized (inFlight) {
+            task = inFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<>(call);
+                inFlight.put(key, task);
+                leader = true;
+            }
+        }
+        if (leader) {
+            try {
+                task.run();
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -5,27 +5,35 @@ import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
 
+import com.brentvatne.exoplayer.drm.DrmTimings;
+import com.brentvatne.exoplayer.drm.SingleFlight;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.drm.ExoMediaDrm;
 import com.google.android.exoplayer2.drm.MediaDrmCallback;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import com.google.android.exoplayer2.upstream.DataSourceInputStream;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
-import com.google.gson.Gson;
 
 public class LatensMediaDrmCallback implements MediaDrmCallback {
 
     private static final String TAG = "LatensMediaDrmCallback";
 
+    /* Shared by all players, so identical requests issued at the same time (mosaics, retries)
+     * result in a single round trip to the license server. */
+    private static final SingleFlight<byte[]> inFlightRequests = new SingleFlight<>();
+
     private final HttpDataSource.Factory dataSourceFactory;
 
     private String defaultLicenseUrl;
@@ -34,57 +42,97 @@ public class LatensMediaDrmCallback implements MediaDrmCallback {
 
     private String customerName;
 
+    private final LatensRegistrationCodec codec;
+
+    private volatile DrmTimings timings;
+
     public LatensMediaDrmCallback(String defaultLicenseUrl, String portalId, String customerName, HttpDataSource.Factory dataSourceFactory) {
         this.defaultLicenseUrl = defaultLicenseUrl;
         this.portalId = portalId;
         this.customerName = customerName;
         this.dataSourceFactory = dataSourceFactory;
+        this.codec = new LatensRegistrationCodec(customerName, portalId);
     }
 
     public void setKeyRequestProperty(String name, String value) {
         // ignore
     }
 
+    /**
+     * Sets where the phase latencies of the requests made by this callback are recorded, may be
+     * null. Requests coalesced with one of another callback are recorded by that callback only.
+     */
+    public void setTimings(DrmTimings timings) {
+        this.timings = timings;
+    }
+
     public String createLatensRegistration(byte[] payload) {
-        LatensDeviceInfo deviceInfo = new LatensDeviceInfo();
-        LatensRegistration latensRegistration = new LatensRegistration();
-        latensRegistration.customerName = this.customerName;
-        latensRegistration.accountName = "PlayReadyAccount";
-        latensRegistration.portalId = this.portalId;
-        latensRegistration.friendlyName = "tadaam";
-        latensRegistration.deviceInfo = deviceInfo;
-        LatensRegistrationBody body = new LatensRegistrationBody();
-        body.latensRegistration = latensRegistration;
-        try {
-            body.payload = new String(Base64.encode(payload, 0), "US-ASCII");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+        byte[] request = codec.encodeRequest(payload);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, new String(Base64.decode(request, Base64.DEFAULT)));
         }
-        Gson gson = new Gson();
-        String jsonBody = gson.toJson(body);
-        Log.d(TAG, jsonBody);
-        return Base64.encodeToString(jsonBody.getBytes(), Base64.DEFAULT);
+        return new String(request, Charset.forName("US-ASCII"));
     }
 
     @Override
-    public byte[] executeProvisionRequest(UUID uuid, ExoMediaDrm.ProvisionRequest request) throws IOException {
-        String url = request.getDefaultUrl() + "&signedRequest=" + new String(request.getData());
-        return executePost(dataSourceFactory, url, new byte[0], null);
+    public byte[] executeProvisionRequest(UUID uuid, final ExoMediaDrm.ProvisionRequest request) throws IOException {
+        final String url = request.getDefaultUrl() + "&signedRequest=" + new String(request.getData());
+        try {
+            return inFlightRequests.execute("provision|" + url, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    long startMs = DrmTimings.now();
+                    byte[] response = executePost(dataSourceFactory, url, new byte[0], null, timings);
+                    if (timings != null) {
+                        timings.recordSince(DrmTimings.PHASE_PROVISION, startMs);
+                    }
+                    return response;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
     }
 
     @Override
-    public byte[] executeKeyRequest(UUID uuid, ExoMediaDrm.KeyRequest request) throws Exception {
-        String url = defaultLicenseUrl;
-        String requestBody = createLatensRegistration(request.getData());
-        byte[] keyResponse = executePost(dataSourceFactory, url, requestBody.getBytes(), null);
-        Gson gson = new Gson();
-        String response = new String(keyResponse);
-        YeloLicenseResponse license = gson.fromJson(response, YeloLicenseResponse.class);
-        return Base64.decode(license.license, Base64.DEFAULT);
+    public byte[] executeKeyRequest(UUID uuid, final ExoMediaDrm.KeyRequest request) throws Exception {
+        final String url = defaultLicenseUrl;
+        String key = "key|" + url + "|" + digest(request.getData());
+        return inFlightRequests.execute(key, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                DrmTimings timings = LatensMediaDrmCallback.this.timings;
+                long startMs = DrmTimings.now();
+                byte[] requestBody = codec.encodeRequest(request.getData());
+                if (timings != null) {
+                    timings.recordSince(DrmTimings.PHASE_REQUEST_BUILD, startMs);
+                }
+                byte[] keyResponse = executePost(dataSourceFactory, url, requestBody, null, timings);
+                startMs = DrmTimings.now();
+                byte[] keyResponseData = LatensRegistrationCodec.decodeResponse(keyResponse);
+                if (timings != null) {
+                    timings.recordSince(DrmTimings.PHASE_RESPONSE_PARSE, startMs);
+                    timings.onKeyResponseReturned();
+                }
+                return keyResponseData;
+            }
+        });
+    }
+
+    /**
+     * Key challenges embed the key ids of the content, but also a per session nonce the license
+     * is bound to, so only byte identical challenges can share a response.
+     */
+    private static String digest(byte[] data) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(data);
+        return Base64.encodeToString(hash, Base64.NO_WRAP);
     }
 
     private static byte[] executePost(HttpDataSource.Factory dataSourceFactory, String url,
-                                      byte[] data, Map<String, String> requestProperties) throws IOException {
+                                      byte[] data, Map<String, String> requestProperties,
+                                      DrmTimings timings) throws IOException {
         HttpDataSource dataSource = dataSourceFactory.createDataSource();
         if (requestProperties != null) {
             for (Map.Entry<String, String> requestProperty : requestProperties.entrySet()) {
@@ -94,9 +142,16 @@ public class LatensMediaDrmCallback implements MediaDrmCallback {
         DataSpec dataSpec = new DataSpec(Uri.parse(url), data, 0, 0, C.LENGTH_UNSET, null,
                 DataSpec.FLAG_ALLOW_GZIP);
         DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, dataSpec);
+        long startMs = DrmTimings.now();
+        DrmTimings.setCurrent(timings);
         try {
-            return Util.toByteArray(inputStream);
+            byte[] response = Util.toByteArray(inputStream);
+            if (timings != null) {
+                timings.recordSince(DrmTimings.PHASE_NETWORK, startMs);
+            }
+            return response;
         } finally {
+            DrmTimings.setCurrent(null);
             Util.closeQuietly(inputStream);
         }
     }
@@ -0,0 +1,136 @@
+package com.brentvatne.exoplayer.latens;
+
+import android.util.Base64;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Encodes Latens registration requests and decodes Yelo license responses without going through
+ * Gson's reflective binding for every request.
+ * <p>
+ * Everything but the payload is fixed for a customer and portal, so the JSON up to the payload is
+ * serialized once and the payload is appended to it in a per thread buffer. The request bytes are
+ * identical to those of a Gson serialized {@link LatensRegistrationBody}.
+ */
+final class LatensRegistrationCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] PAYLOAD_START = ",\"Payload\":\"".getBytes(UTF_8);
+    private static final byte[] PAYLOAD_END = "\"}".getBytes(UTF_8);
+    /* Gson escapes '=' as it is HTML safe by default, base64 has no other characters it escapes
+     * besides the line feeds. */
+    private static final byte[] ESCAPED_EQUALS = "\\u003d".getBytes(UTF_8);
+    private static final byte[] ESCAPED_LINE_FEED = "\\n".getBytes(UTF_8);
+
+    private static final String LICENSE_FIELD = "license";
+
+    private static final Gson gson = new Gson();
+    private static LatensDeviceInfo deviceInfo;
+
+    private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /* Serialized body without payload, minus its closing brace. */
+    private final byte[] prefix;
+
+    LatensRegistrationCodec(String customerName, String portalId) {
+        LatensRegistration latensRegistration = new LatensRegistration();
+        latensRegistration.customerName = customerName;
+        latensRegistration.accountName = "PlayReadyAccount";
+        latensRegistration.portalId = portalId;
+        latensRegistration.friendlyName = "tadaam";
+        latensRegistration.deviceInfo = getDeviceInfo();
+        LatensRegistrationBody body = new LatensRegistrationBody();
+        body.latensRegistration = latensRegistration;
+        String json = gson.toJson(body);
+        this.prefix = json.substring(0, json.length() - 1).getBytes(UTF_8);
+    }
+
+    private static synchronized LatensDeviceInfo getDeviceInfo() {
+        if (deviceInfo == null) {
+            deviceInfo = new LatensDeviceInfo();
+        }
+        return deviceInfo;
+    }
+
+    /**
+     * Returns the base64 encoded registration body wrapping {@code payload}, ready to be posted.
+     */
+    byte[] encodeRequest(byte[] payload) {
+        Buffer buffer = buffers.get();
+        buffer.reset();
+        buffer.write(prefix);
+        buffer.write(PAYLOAD_START);
+        byte[] encodedPayload = Base64.encode(payload, Base64.DEFAULT);
+        for (byte b : encodedPayload) {
+            if (b == '=') {
+                buffer.write(ESCAPED_EQUALS);
+            } else if (b == '\n') {
+                buffer.write(ESCAPED_LINE_FEED);
+            } else {
+                buffer.write(b);
+            }
+        }
+        buffer.write(PAYLOAD_END);
+        return Base64.encode(buffer.data, 0, buffer.size, Base64.DEFAULT);
+    }
+
+    /**
+     * Returns the key response carried by a Yelo license response.
+     */
+    static byte[] decodeResponse(byte[] response) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(response), UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (LICENSE_FIELD.equals(reader.nextName())) {
+                    return Base64.decode(reader.nextString(), Base64.DEFAULT);
+                }
+                reader.skipValue();
+            }
+            throw new IOException("No license in license response");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static final class Buffer {
+
+        private byte[] data = new byte[4096];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void write(byte b) {
+            ensureCapacity(size + 1);
+            data[size++] = b;
+        }
+
+        void write(byte[] bytes) {
+            ensureCapacity(size + bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.brentvatne.exoplayer.manifest;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Revalidates repeated GETs of the same url with If-None-Match / If-Modified-Since and answers a
+ * 304 with the body of the last 200, so unchanged manifests are not downloaded again. Only XML
+ * responses of at most {@link #MAX_BODY_BYTES} carrying an ETag or Last-Modified header are kept,
+ * in memory, for the most recently requested urls; anything else is streamed through untouched.
+ */
+public final class ConditionalGetInterceptor implements Interceptor {
+
+    private static final int MAX_ENTRIES = 8;
+    static final int MAX_BODY_BYTES = 512 * 1024;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_RANGE = "Range";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.header(HEADER_RANGE) != null) {
+            return chain.proceed(request);
+        }
+        String key = request.url().toString();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            Request.Builder builder = request.newBuilder();
+            if (entry.etag != null) {
+                builder.header(HEADER_IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                builder.header(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+            }
+            request = builder.build();
+        }
+
+        Response response = chain.proceed(request);
+        if (response.code() == HTTP_NOT_MODIFIED && entry != null) {
+            response.close();
+            return response.newBuilder()
+                    .code(HTTP_OK)
+                    .message("OK")
+                    .body(ResponseBody.create(entry.contentType, entry.body))
+                    .build();
+        }
+        String etag = response.header(HEADER_ETAG);
+        String lastModified = response.header(HEADER_LAST_MODIFIED);
+        if (response.code() != HTTP_OK || response.body() == null
+                || (etag == null && lastModified == null) || !isCacheable(response)) {
+            synchronized (entries) {
+                entries.remove(key);
+            }
+            return response;
+        }
+        MediaType contentType = response.body().contentType();
+        byte[] body = response.body().bytes();
+        synchronized (entries) {
+            entries.put(key, new Entry(etag, lastModified, contentType, body));
+        }
+        return response.newBuilder()
+                .body(ResponseBody.create(contentType, body))
+                .build();
+    }
+
+    private static boolean isCacheable(Response response) throws IOException {
+        MediaType contentType = response.body().contentType();
+        if (contentType == null || !contentType.subtype().endsWith("xml")) {
+            return false;
+        }
+        long contentLength = response.body().contentLength();
+        if (contentLength < 0) {
+            // Chunked or transparently gunzipped, peek at most one byte past the cap.
+            contentLength = response.peekBody(MAX_BODY_BYTES + 1).contentLength();
+        }
+        return contentLength <= MAX_BODY_BYTES;
+    }
+
+    private static final class Entry {
+
+        final String etag;
+        final String lastModified;
+        final MediaType contentType;
+        final byte[] body;
+
+        Entry(String etag, String lastModified, MediaType contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
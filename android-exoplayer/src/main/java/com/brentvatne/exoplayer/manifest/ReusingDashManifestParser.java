@@ -0,0 +1,129 @@
+package com.brentvatne.exoplayer.manifest;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.brentvatne.exoplayer.cdn.CdnFailover;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Parses DASH manifests, returning the previous manifest instead of parsing again when a refresh
+ * of a live manifest yields the same document, as it does after a 304 from
+ * {@link ConditionalGetInterceptor}. One instance per media source.
+ * <p>
+ * ExoPlayer only uses the first of several BaseURL elements; absolute alternatives are passed to
+ * a {@link CdnFailover} to fail over to.
+ */
+public final class ReusingDashManifestParser implements ParsingLoadable.Parser<DashManifest> {
+
+    public interface Listener {
+
+        /**
+         * Called on the loading thread after every manifest load.
+         *
+         * @param manifest The parsed or reused manifest.
+         * @param parseTimeMs Time spent parsing, 0 if the previous manifest was reused.
+         * @param sizeBytes Size of the manifest document.
+         * @param reused Whether the document was unchanged and the previous manifest reused.
+         */
+        void onManifestParsed(DashManifest manifest, long parseTimeMs, int sizeBytes, boolean reused);
+    }
+
+    private static final String TAG = "ReusingDashManifestParser";
+
+    private final DashManifestParser parser = new DashManifestParser();
+    private final Listener listener;
+    private final CdnFailover cdnFailover;
+
+    private Uri lastUri;
+    private byte[] lastDocument;
+    private DashManifest lastManifest;
+
+    public ReusingDashManifestParser(Listener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * @param cdnFailover Failover to give the alternative BaseURLs of each manifest, or null.
+     */
+    public ReusingDashManifestParser(Listener listener, CdnFailover cdnFailover) {
+        this.listener = listener;
+        this.cdnFailover = cdnFailover;
+    }
+
+    @Override
+    public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+        byte[] document = Util.toByteArray(inputStream);
+        synchronized (this) {
+            if (lastManifest != null && uri.equals(lastUri) && Arrays.equals(document, lastDocument)) {
+                listener.onManifestParsed(lastManifest, 0, document.length, true);
+                return lastManifest;
+            }
+        }
+        long startMs = SystemClock.elapsedRealtime();
+        DashManifest manifest = parser.parse(uri, new ByteArrayInputStream(document));
+        long parseTimeMs = SystemClock.elapsedRealtime() - startMs;
+        if (cdnFailover != null) {
+            cdnFailover.setManifestBaseUrlGroups(parseBaseUrlGroups(document));
+        }
+        synchronized (this) {
+            lastUri = uri;
+            lastDocument = document;
+            lastManifest = manifest;
+        }
+        listener.onManifestParsed(manifest, parseTimeMs, document.length, false);
+        return manifest;
+    }
+
+    /**
+     * Returns the absolute BaseURLs of the manifest sharing a parent element, one list per parent
+     * with more than one.
+     */
+    private static List<List<String>> parseBaseUrlGroups(byte[] document) {
+        List<List<String>> groups = new ArrayList<>();
+        try {
+            XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+            xpp.setInput(new ByteArrayInputStream(document), null);
+            Deque<List<String>> elements = new ArrayDeque<>();
+            int eventType;
+            while ((eventType = xpp.next()) != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    if ("BaseURL".equals(xpp.getName())) {
+                        String baseUrl = xpp.nextText().trim();
+                        if (!elements.isEmpty()
+                                && (baseUrl.startsWith("http://") || baseUrl.startsWith("https://"))) {
+                            elements.peek().add(baseUrl);
+                        }
+                    } else {
+                        elements.push(new ArrayList<String>());
+                    }
+                } else if (eventType == XmlPullParser.END_TAG) {
+                    List<String> baseUrls = elements.pop();
+                    if (baseUrls.size() > 1) {
+                        groups.add(baseUrls);
+                    }
+                }
+            }
+        } catch (XmlPullParserException | IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read BaseURLs", e);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,170 @@
+package com.brentvatne.exoplayer.telemetry;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Timestamps the milestones from setting a source to its first rendered frame. Each milestone is
+ * recorded once per session and also marked as a {@link Trace} section named
+ * {@code RCTVideo.<milestone>}, so it shows up in systrace and Perfetto captures.
+ * <p>
+ * Milestones may be marked from any thread.
+ */
+public final class StartupTracer {
+
+    public static final int MILESTONE_SET_SRC = 0;
+    public static final int MILESTONE_INITIALIZE_PLAYER = 1;
+    public static final int MILESTONE_PREPARE = 2;
+    public static final int MILESTONE_MANIFEST_LOADED = 3;
+    public static final int MILESTONE_DRM_KEYS_LOADED = 4;
+    public static final int MILESTONE_FIRST_SEGMENT_LOADED = 5;
+    public static final int MILESTONE_READY = 6;
+    public static final int MILESTONE_FIRST_FRAME = 7;
+
+    public static final String[] MILESTONE_NAMES = {
+            "setSrc",
+            "initializePlayer",
+            "prepare",
+            "manifestLoaded",
+            "drmKeysLoaded",
+            "firstSegmentLoaded",
+            "ready",
+            "firstFrame",
+    };
+
+    private static final String TRACE_SECTION_PREFIX = "RCTVideo.";
+
+    private final long[] timesMs = new long[MILESTONE_NAMES.length];
+    private boolean active;
+    private boolean preloaded;
+
+    public StartupTracer() {
+        Arrays.fill(timesMs, C.TIME_UNSET);
+    }
+
+    /**
+     * Starts a new session at {@link #MILESTONE_SET_SRC}, dropping the current one.
+     */
+    public synchronized void start() {
+        Arrays.fill(timesMs, C.TIME_UNSET);
+        preloaded = false;
+        active = true;
+        mark(MILESTONE_SET_SRC);
+    }
+
+    /**
+     * Records {@code milestone} if the session has not reached it yet. The session ends at
+     * {@link #MILESTONE_FIRST_FRAME}.
+     *
+     * @return Whether the milestone was recorded.
+     */
+    public synchronized boolean mark(int milestone) {
+        if (!active || timesMs[milestone] != C.TIME_UNSET) {
+            return false;
+        }
+        timesMs[milestone] = SystemClock.elapsedRealtime();
+        if (Util.SDK_INT >= 18) {
+            Trace.beginSection(TRACE_SECTION_PREFIX + MILESTONE_NAMES[milestone]);
+            Trace.endSection();
+        }
+        if (milestone == MILESTONE_FIRST_FRAME) {
+            active = false;
+        }
+        return true;
+    }
+
+    /**
+     * Notes that the session continued on a player prepared before it started, preloaded or kept
+     * from an unmounted view, whose loading milestones are then missing.
+     */
+    public synchronized void setPreloaded() {
+        preloaded = true;
+    }
+
+    public synchronized boolean isPreloaded() {
+        return preloaded;
+    }
+
+    /**
+     * Returns the time from {@link #MILESTONE_SET_SRC} to {@code milestone}, or
+     * {@link C#TIME_UNSET} if it was not reached.
+     */
+    public synchronized long getOffsetMs(int milestone) {
+        long startMs = timesMs[MILESTONE_SET_SRC];
+        if (startMs == C.TIME_UNSET || timesMs[milestone] == C.TIME_UNSET) {
+            return C.TIME_UNSET;
+        }
+        return timesMs[milestone] - startMs;
+    }
+
+    /**
+     * Returns a listener marking {@link #MILESTONE_FIRST_SEGMENT_LOADED} and passing all events on
+     * to {@code listener}.
+     */
+    public MediaSourceEventListener wrap(final MediaSourceEventListener listener) {
+        return new MediaSourceEventListener() {
+            @Override
+            public void onLoadStarted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                      int trackSelectionReason, Object trackSelectionData,
+                                      long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs) {
+                listener.onLoadStarted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                        trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs);
+            }
+
+            @Override
+            public void onLoadCompleted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                        int trackSelectionReason, Object trackSelectionData,
+                                        long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                        long loadDurationMs, long bytesLoaded) {
+                if (dataType == C.DATA_TYPE_MEDIA) {
+                    mark(MILESTONE_FIRST_SEGMENT_LOADED);
+                }
+                listener.onLoadCompleted(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                        trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                        loadDurationMs, bytesLoaded);
+            }
+
+            @Override
+            public void onLoadCanceled(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                       int trackSelectionReason, Object trackSelectionData,
+                                       long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                       long loadDurationMs, long bytesLoaded) {
+                listener.onLoadCanceled(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                        trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                        loadDurationMs, bytesLoaded);
+            }
+
+            @Override
+            public void onLoadError(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                    int trackSelectionReason, Object trackSelectionData,
+                                    long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                    long loadDurationMs, long bytesLoaded, IOException error,
+                                    boolean wasCanceled) {
+                listener.onLoadError(dataSpec, dataType, trackType, trackFormat, trackSelectionReason,
+                        trackSelectionData, mediaStartTimeMs, mediaEndTimeMs, elapsedRealtimeMs,
+                        loadDurationMs, bytesLoaded, error, wasCanceled);
+            }
+
+            @Override
+            public void onUpstreamDiscarded(int trackType, long mediaStartTimeMs, long mediaEndTimeMs) {
+                listener.onUpstreamDiscarded(trackType, mediaStartTimeMs, mediaEndTimeMs);
+            }
+
+            @Override
+            public void onDownstreamFormatChanged(int trackType, Format trackFormat, int trackSelectionReason,
+                                                  Object trackSelectionData, long mediaTimeMs) {
+                listener.onDownstreamFormatChanged(trackType, trackFormat, trackSelectionReason,
+                        trackSelectionData, mediaTimeMs);
+            }
+        };
+    }
+}
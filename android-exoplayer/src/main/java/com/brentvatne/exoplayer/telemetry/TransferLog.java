@@ -0,0 +1,291 @@
+package com.brentvatne.exoplayer.telemetry;
+
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Fixed size ring buffer of per-segment transfers of a player: url hash, track type, bitrate,
+ * bytes, time to first byte, total time and HTTP status. Entries and transfers waiting for their
+ * load event live in arrays allocated up front, so the log itself does not allocate per transfer;
+ * the oldest entries are overwritten when it is not drained in time.
+ * <p>
+ * Network figures come from the data sources returned by {@link #wrap}, track type and bitrate
+ * from the media source events, which also complete the entries. Recording and draining happen on
+ * the thread of the handler the media source reports events to.
+ */
+public final class TransferLog {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /* Reported transfers waiting for their load event, bounded in case events never come. */
+    private static final int MAX_PENDING = 64;
+
+    /* Status of the last response on the loading thread, see RESPONSE_CODE_INTERCEPTOR. */
+    private static final ThreadLocal<int[]> lastResponseCode = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Application interceptor of the OkHttp client under {@link #wrap}, passing the HTTP status of
+     * the final response (after redirects) to the data source on the same thread.
+     */
+    public static final Interceptor RESPONSE_CODE_INTERCEPTOR = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            lastResponseCode.get()[0] = response.code();
+            return response;
+        }
+    };
+
+    public interface Visitor {
+
+        /**
+         * @param ttfbMs Time to first byte, -1 if the segment was not loaded from the network.
+         * @param httpStatus HTTP status, 0 if the segment was not loaded from the network or the
+         *     request failed without a response.
+         */
+        void visit(int urlHash, int trackType, int bitrate, long bytes, int ttfbMs, int totalMs,
+                   int httpStatus, long endTimeMs);
+    }
+
+    private final int capacity;
+    private final int[] urlHashes;
+    private final int[] trackTypes;
+    private final int[] bitrates;
+    private final long[] bytes;
+    private final int[] ttfbMs;
+    private final int[] totalMs;
+    private final int[] httpStatuses;
+    private final long[] endTimesMs;
+    private long written;
+    private long read;
+    private long dropped;
+
+    /* Transfers reported by data sources, taken by their load event. A slot is free when its
+     * sequence number is 0; when none is, the oldest is overwritten. Guarded by pendingKeys. */
+    private final long[] pendingKeys = new long[MAX_PENDING];
+    private final long[] pendingSequenceNumbers = new long[MAX_PENDING];
+    private final int[] pendingTtfbMs = new int[MAX_PENDING];
+    private final int[] pendingTotalMs = new int[MAX_PENDING];
+    private final int[] pendingHttpStatuses = new int[MAX_PENDING];
+    private long lastPendingSequenceNumber;
+
+    private final MediaSourceEventListener eventListener = new MediaSourceEventListener() {
+        @Override
+        public void onLoadStarted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                  int trackSelectionReason, Object trackSelectionData,
+                                  long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs) {
+        }
+
+        @Override
+        public void onLoadCompleted(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                    int trackSelectionReason, Object trackSelectionData,
+                                    long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                    long loadDurationMs, long bytesLoaded) {
+            onLoadEnded(dataSpec, dataType, trackType, trackFormat, loadDurationMs, bytesLoaded, null);
+        }
+
+        @Override
+        public void onLoadCanceled(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                   int trackSelectionReason, Object trackSelectionData,
+                                   long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                   long loadDurationMs, long bytesLoaded) {
+            synchronized (pendingKeys) {
+                int slot = findPending(keyFor(dataSpec));
+                if (slot != C.INDEX_UNSET) {
+                    pendingSequenceNumbers[slot] = 0;
+                }
+            }
+        }
+
+        @Override
+        public void onLoadError(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                                int trackSelectionReason, Object trackSelectionData,
+                                long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs,
+                                long loadDurationMs, long bytesLoaded, IOException error,
+                                boolean wasCanceled) {
+            onLoadEnded(dataSpec, dataType, trackType, trackFormat, loadDurationMs, bytesLoaded, error);
+        }
+
+        @Override
+        public void onUpstreamDiscarded(int trackType, long mediaStartTimeMs, long mediaEndTimeMs) {
+        }
+
+        @Override
+        public void onDownstreamFormatChanged(int trackType, Format trackFormat, int trackSelectionReason,
+                                              Object trackSelectionData, long mediaTimeMs) {
+        }
+    };
+
+    public TransferLog(int capacity) {
+        this.capacity = capacity;
+        urlHashes = new int[capacity];
+        trackTypes = new int[capacity];
+        bitrates = new int[capacity];
+        bytes = new long[capacity];
+        ttfbMs = new int[capacity];
+        totalMs = new int[capacity];
+        httpStatuses = new int[capacity];
+        endTimesMs = new long[capacity];
+    }
+
+    /**
+     * Returns a factory whose data sources report the transfers of {@code httpDataSourceFactory}.
+     * HTTP statuses are only known for an OkHttp client with {@link #RESPONSE_CODE_INTERCEPTOR}.
+     */
+    public DataSource.Factory wrap(final HttpDataSource.Factory httpDataSourceFactory) {
+        return new DataSource.Factory() {
+            @Override
+            public DataSource createDataSource() {
+                return new TransferLogDataSource(httpDataSourceFactory.createDataSource(), TransferLog.this);
+            }
+        };
+    }
+
+    /**
+     * Listener to pass to the media source.
+     */
+    public MediaSourceEventListener getMediaSourceEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Called by data sources on the loading thread when a request has been closed.
+     */
+    void onNetworkTransfer(DataSpec dataSpec, int ttfbMs, int totalMs, int httpStatus) {
+        long key = keyFor(dataSpec);
+        synchronized (pendingKeys) {
+            int slot = findPending(key);
+            if (slot == C.INDEX_UNSET) {
+                slot = 0;
+                for (int i = 0; i < MAX_PENDING; i++) {
+                    if (pendingSequenceNumbers[i] < pendingSequenceNumbers[slot]) {
+                        slot = i;
+                    }
+                }
+            }
+            pendingKeys[slot] = key;
+            pendingSequenceNumbers[slot] = ++lastPendingSequenceNumber;
+            pendingTtfbMs[slot] = ttfbMs;
+            pendingTotalMs[slot] = totalMs;
+            pendingHttpStatuses[slot] = httpStatus;
+        }
+    }
+
+    /**
+     * Clears the status recorded by {@link #RESPONSE_CODE_INTERCEPTOR} on this thread.
+     */
+    static void clearResponseCode() {
+        lastResponseCode.get()[0] = 0;
+    }
+
+    /**
+     * Returns the status recorded by {@link #RESPONSE_CODE_INTERCEPTOR} on this thread since
+     * {@link #clearResponseCode}, 0 if none.
+     */
+    static int getResponseCode() {
+        return lastResponseCode.get()[0];
+    }
+
+    public boolean isEmpty() {
+        return written == read;
+    }
+
+    /**
+     * Number of entries overwritten before they were drained.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Passes the entries recorded since the last drain to {@code visitor}, oldest first.
+     *
+     * @return The number of entries drained.
+     */
+    public int drain(Visitor visitor) {
+        int count = (int) (written - read);
+        for (; read < written; read++) {
+            int i = (int) (read % capacity);
+            visitor.visit(urlHashes[i], trackTypes[i], bitrates[i], bytes[i], ttfbMs[i], totalMs[i],
+                    httpStatuses[i], endTimesMs[i]);
+        }
+        return count;
+    }
+
+    private void onLoadEnded(DataSpec dataSpec, int dataType, int trackType, Format trackFormat,
+                             long loadDurationMs, long bytesLoaded, IOException error) {
+        boolean fromNetwork = false;
+        int transferTtfbMs = -1;
+        int transferTotalMs = (int) loadDurationMs;
+        int httpStatus = 0;
+        synchronized (pendingKeys) {
+            int slot = findPending(keyFor(dataSpec));
+            if (slot != C.INDEX_UNSET) {
+                pendingSequenceNumbers[slot] = 0;
+                fromNetwork = true;
+                transferTtfbMs = pendingTtfbMs[slot];
+                transferTotalMs = pendingTotalMs[slot];
+                httpStatus = pendingHttpStatuses[slot];
+            }
+        }
+        if (dataType != C.DATA_TYPE_MEDIA && dataType != C.DATA_TYPE_MEDIA_INITIALIZATION) {
+            return;
+        }
+        if (!fromNetwork && error instanceof HttpDataSource.InvalidResponseCodeException) {
+            httpStatus = ((HttpDataSource.InvalidResponseCodeException) error).responseCode;
+        }
+        if (written - read == capacity) {
+            read++;
+            dropped++;
+        }
+        int i = (int) (written % capacity);
+        urlHashes[i] = dataSpec.uri.hashCode();
+        trackTypes[i] = trackType;
+        bitrates[i] = trackFormat != null ? trackFormat.bitrate : Format.NO_VALUE;
+        bytes[i] = bytesLoaded;
+        ttfbMs[i] = transferTtfbMs;
+        totalMs[i] = transferTotalMs;
+        httpStatuses[i] = httpStatus;
+        endTimesMs[i] = SystemClock.elapsedRealtime();
+        written++;
+    }
+
+    /**
+     * Returns the slot of the pending transfer of {@code key}, or {@link C#INDEX_UNSET}.
+     */
+    private int findPending(long key) {
+        for (int i = 0; i < MAX_PENDING; i++) {
+            if (pendingSequenceNumbers[i] != 0 && pendingKeys[i] == key) {
+                return i;
+            }
+        }
+        return C.INDEX_UNSET;
+    }
+
+    private static long keyFor(DataSpec dataSpec) {
+        // Without the host, which CDN failover may have changed below the media source.
+        int pathHash = hashCode(dataSpec.uri.getEncodedPath());
+        int queryHash = hashCode(dataSpec.uri.getEncodedQuery());
+        return ((long) (31 * pathHash + queryHash) << 32) ^ dataSpec.absoluteStreamPosition;
+    }
+
+    private static int hashCode(String s) {
+        return s != null ? s.hashCode() : 0;
+    }
+}
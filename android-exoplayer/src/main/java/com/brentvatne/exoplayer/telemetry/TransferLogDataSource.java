@@ -0,0 +1,74 @@
+package com.brentvatne.exoplayer.telemetry;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import java.io.IOException;
+
+/**
+ * Measures time to first byte, total time and HTTP status of the requests of an
+ * {@link HttpDataSource} and reports them to a {@link TransferLog} when closed.
+ */
+final class TransferLogDataSource implements DataSource {
+
+    private final HttpDataSource upstream;
+    private final TransferLog transferLog;
+
+    private DataSpec dataSpec;
+    private long openStartMs;
+    private int ttfbMs;
+    private int httpStatus;
+
+    TransferLogDataSource(HttpDataSource upstream, TransferLog transferLog) {
+        this.upstream = upstream;
+        this.transferLog = transferLog;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        openStartMs = SystemClock.elapsedRealtime();
+        ttfbMs = -1;
+        httpStatus = 0;
+        TransferLog.clearResponseCode();
+        try {
+            return upstream.open(dataSpec);
+        } catch (HttpDataSource.InvalidResponseCodeException e) {
+            httpStatus = e.responseCode;
+            throw e;
+        } finally {
+            if (httpStatus == 0) {
+                httpStatus = TransferLog.getResponseCode();
+            }
+            // Open returns once the response headers are in.
+            ttfbMs = (int) (SystemClock.elapsedRealtime() - openStartMs);
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        return upstream.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            upstream.close();
+        } finally {
+            if (dataSpec != null) {
+                transferLog.onNetworkTransfer(dataSpec, ttfbMs,
+                        (int) (SystemClock.elapsedRealtime() - openStartMs), httpStatus);
+                dataSpec = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.brentvatne.exoplayer.latens;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in for the Latens/Yelo license server on a {@link MockWebServer}, speaking the
+ * {@link LatensRegistrationBody} / {@link YeloLicenseResponse} protocol with a configurable
+ * latency, error rate and license size.
+ * <p>
+ * Licenses are derived from the challenge, see {@link #licenseFor}, so callers can check they got
+ * the response to their own request. They are not real licenses and only exercise the transport
+ * and parsing, not the CDM.
+ */
+final class LatensLicenseServer extends Dispatcher {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LICENSE_PATH = "/license";
+    private static final String PROVISION_PATH = "/provision";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Gson gson = new Gson();
+    private final Random random = new Random(0);
+
+    private final AtomicInteger keyRequestCount = new AtomicInteger();
+    private final AtomicInteger provisionRequestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    private volatile long latencyMs;
+    private volatile double errorRate;
+    private volatile int licenseSize = 1024;
+
+    void start() throws IOException {
+        server.setDispatcher(this);
+        server.start();
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Sets the delay before the response headers of every request.
+     */
+    void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * Sets the fraction of well formed requests answered with a 500.
+     */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the size of the licenses before base64 encoding.
+     */
+    void setLicenseSize(int licenseSize) {
+        this.licenseSize = licenseSize;
+    }
+
+    String getLicenseUrl() {
+        return server.url(LICENSE_PATH).toString();
+    }
+
+    /**
+     * Returns the default url of provisioning requests, to which the callback appends the signed
+     * request as a query parameter.
+     */
+    String getProvisionUrl() {
+        return server.url(PROVISION_PATH + "?version=1").toString();
+    }
+
+    int getKeyRequestCount() {
+        return keyRequestCount.get();
+    }
+
+    int getProvisionRequestCount() {
+        return provisionRequestCount.get();
+    }
+
+    int getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Returns the license the server answers {@code challenge} with.
+     */
+    static byte[] licenseFor(byte[] challenge, int licenseSize) {
+        byte[] license = new byte[licenseSize];
+        for (int i = 0; i < licenseSize; i++) {
+            license[i] = (byte) (i + (challenge.length == 0 ? 0 : challenge[i % challenge.length]));
+        }
+        return license;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return new MockResponse().setResponseCode(405);
+        }
+        String path = request.getPath();
+        if (path.startsWith(PROVISION_PATH)) {
+            provisionRequestCount.incrementAndGet();
+            if (request.getRequestUrl().queryParameter("signedRequest") == null) {
+                return new MockResponse().setResponseCode(400);
+            }
+            return respond(licenseFor(request.getRequestUrl().queryParameter("signedRequest")
+                    .getBytes(UTF_8), licenseSize), "application/octet-stream");
+        }
+        if (!path.startsWith(LICENSE_PATH)) {
+            return new MockResponse().setResponseCode(404);
+        }
+        keyRequestCount.incrementAndGet();
+        byte[] challenge;
+        try {
+            String json = new String(Base64.getMimeDecoder().decode(request.getBody().readByteArray()),
+                    UTF_8);
+            LatensRegistrationBody body = gson.fromJson(json, LatensRegistrationBody.class);
+            if (body == null || body.latensRegistration == null || body.payload == null) {
+                return new MockResponse().setResponseCode(400);
+            }
+            challenge = Base64.getMimeDecoder().decode(body.payload);
+        } catch (IllegalArgumentException | JsonParseException e) {
+            return new MockResponse().setResponseCode(400);
+        }
+        if (shouldFail()) {
+            errorCount.incrementAndGet();
+            return respond("{\"error\":\"injected\"}".getBytes(UTF_8), "application/json")
+                    .setResponseCode(500);
+        }
+        YeloLicenseResponse response = new YeloLicenseResponse();
+        response.license = Base64.getEncoder().encodeToString(licenseFor(challenge, licenseSize));
+        return respond(gson.toJson(response).getBytes(UTF_8), "application/json");
+    }
+
+    private boolean shouldFail() {
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private MockResponse respond(byte[] body, String contentType) {
+        return new MockResponse()
+                .setHeader("Content-Type", contentType)
+                .setBody(new okio.Buffer().write(body))
+                .setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS);
+    }
+}
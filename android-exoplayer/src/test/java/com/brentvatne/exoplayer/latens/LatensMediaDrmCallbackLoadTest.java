@@ -0,0 +1,222 @@
+package com.brentvatne.exoplayer.latens;
+
+import com.brentvatne.exoplayer.DrmHttpDataSourceFactory;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput and tail latency of {@link LatensMediaDrmCallback} key requests made by concurrent
+ * callers against {@link LatensLicenseServer}, over {@link com.brentvatne.exoplayer.DrmHttpDataSource}
+ * and OkHttp. Numbers are printed, assertions only cover correctness and the injected latency.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 28)
+public class LatensMediaDrmCallbackLoadTest {
+
+    private static final String USER_AGENT = "sctv";
+    private static final int CALLERS = 8;
+    private static final int REQUESTS_PER_CALLER = 25;
+    private static final int CHALLENGE_SIZE = 2048;
+    private static final int LICENSE_SIZE = 1024;
+    private static final long LATENCY_MS = 20;
+
+    private LatensLicenseServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LatensLicenseServer();
+        server.setLatencyMs(LATENCY_MS);
+        server.setLicenseSize(LICENSE_SIZE);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void drmHttpDataSource() throws Exception {
+        LoadResult result = run("DrmHttpDataSource", new DrmHttpDataSourceFactory(USER_AGENT, null));
+        assertEquals(0, result.failures);
+        assertEquals(CALLERS * REQUESTS_PER_CALLER, server.getKeyRequestCount());
+        assertTrue(result.percentileMs(50) >= LATENCY_MS);
+    }
+
+    @Test
+    public void okHttp() throws Exception {
+        LoadResult result = run("OkHttp", new OkHttpDataSourceFactory(new OkHttpClient(), USER_AGENT, null));
+        assertEquals(0, result.failures);
+        assertEquals(CALLERS * REQUESTS_PER_CALLER, server.getKeyRequestCount());
+        assertTrue(result.percentileMs(50) >= LATENCY_MS);
+    }
+
+    @Test
+    public void serverErrorsFailOnlyTheirRequests() throws Exception {
+        server.setErrorRate(0.2);
+        LoadResult result = run("DrmHttpDataSource, 20% errors",
+                new DrmHttpDataSourceFactory(USER_AGENT, null));
+        assertEquals(server.getErrorCount(), result.failures);
+        assertTrue(result.failures > 0);
+    }
+
+    @Test
+    public void identicalConcurrentRequestsShareOneRoundTrip() throws Exception {
+        server.setLatencyMs(200);
+        final LatensMediaDrmCallback callback = newCallback(new DrmHttpDataSourceFactory(USER_AGENT, null));
+        final byte[] challenge = challenge(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger successes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        byte[] license = callback.executeKeyRequest(C.WIDEVINE_UUID,
+                                new ExoMediaDrm.DefaultKeyRequest(challenge, null));
+                        if (Arrays.equals(LatensLicenseServer.licenseFor(challenge, LICENSE_SIZE), license)) {
+                            successes.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // Counted as missing success.
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(CALLERS, successes.get());
+        assertTrue(server.getKeyRequestCount() < CALLERS);
+    }
+
+    @Test
+    public void provisionRequest() throws Exception {
+        LatensMediaDrmCallback callback = newCallback(new DrmHttpDataSourceFactory(USER_AGENT, null));
+        final byte[] signedRequest = "c2lnbmVk".getBytes(Charset.forName("US-ASCII"));
+        byte[] response = callback.executeProvisionRequest(C.WIDEVINE_UUID, new ExoMediaDrm.ProvisionRequest() {
+            @Override
+            public byte[] getData() {
+                return signedRequest;
+            }
+
+            @Override
+            public String getDefaultUrl() {
+                return server.getProvisionUrl();
+            }
+        });
+        assertArrayEquals(LatensLicenseServer.licenseFor(signedRequest, LICENSE_SIZE), response);
+        assertEquals(1, server.getProvisionRequestCount());
+    }
+
+    private LatensMediaDrmCallback newCallback(HttpDataSource.Factory dataSourceFactory) {
+        return new LatensMediaDrmCallback(server.getLicenseUrl(), "portal", "customer",
+                dataSourceFactory);
+    }
+
+    /**
+     * Issues {@link #REQUESTS_PER_CALLER} key requests with distinct challenges from each of
+     * {@link #CALLERS} threads, all sharing one callback as the players of a mosaic do.
+     */
+    private LoadResult run(String name, HttpDataSource.Factory dataSourceFactory) throws Exception {
+        final LatensMediaDrmCallback callback = newCallback(dataSourceFactory);
+        final long[] latenciesNs = new long[CALLERS * REQUESTS_PER_CALLER];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        for (int caller = 0; caller < CALLERS; caller++) {
+            final int firstRequest = caller * REQUESTS_PER_CALLER;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = firstRequest; i < firstRequest + REQUESTS_PER_CALLER; i++) {
+                        byte[] challenge = challenge(i);
+                        long startNs = System.nanoTime();
+                        try {
+                            byte[] license = callback.executeKeyRequest(C.WIDEVINE_UUID,
+                                    new ExoMediaDrm.DefaultKeyRequest(challenge, null));
+                            if (!Arrays.equals(LatensLicenseServer.licenseFor(challenge, LICENSE_SIZE), license)) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        latenciesNs[i] = System.nanoTime() - startNs;
+                    }
+                }
+            });
+        }
+        long startNs = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        LoadResult result = new LoadResult(latenciesNs, System.nanoTime() - startNs, failures.get());
+        System.out.println(name + ": " + result);
+        return result;
+    }
+
+    private static byte[] challenge(int index) {
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        new Random(index).nextBytes(challenge);
+        return challenge;
+    }
+
+    private static final class LoadResult {
+
+        final long[] sortedLatenciesNs;
+        final long wallTimeNs;
+        final int failures;
+
+        LoadResult(long[] latenciesNs, long wallTimeNs, int failures) {
+            this.sortedLatenciesNs = latenciesNs.clone();
+            Arrays.sort(sortedLatenciesNs);
+            this.wallTimeNs = wallTimeNs;
+            this.failures = failures;
+        }
+
+        double percentileMs(int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatenciesNs.length) - 1;
+            return sortedLatenciesNs[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            double requestsPerSecond = sortedLatenciesNs.length / (wallTimeNs / 1e9);
+            return String.format("%d requests, %d failed, %.1f req/s, p50 %.1f ms, p90 %.1f ms,"
+                            + " p99 %.1f ms, max %.1f ms", sortedLatenciesNs.length, failures,
+                    requestsPerSecond, percentileMs(50), percentileMs(90), percentileMs(99),
+                    percentileMs(100));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.brentvatne.exoplayer.latens;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import static com.brentvatne.exoplayer.latens.LatensRegistrationCodecTest.bytes;
+import static com.brentvatne.exoplayer.latens.LatensRegistrationCodecTest.decodeResponseWithGson;
+import static com.brentvatne.exoplayer.latens.LatensRegistrationCodecTest.encodeRequestWithGson;
+import static com.brentvatne.exoplayer.latens.LatensRegistrationCodecTest.payload;
+import static com.brentvatne.exoplayer.latens.LatensRegistrationCodecTest.responses;
+
+/**
+ * Compares the time per request and response of {@link LatensRegistrationCodec} with the Gson
+ * binding it replaced, on the payloads of {@link LatensRegistrationCodecTest}. Prints the mean
+ * time per operation after a warm-up; JVM numbers, only the ratio carries over to ART.
+ * <p>
+ * Excluded from the unit tests, run with
+ * {@code ./gradlew testDebugUnitTest --tests '*LatensRegistrationCodecBenchmark' -Pbenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 28)
+public class LatensRegistrationCodecBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 10000;
+
+    /* Keeps results alive so the work is not optimized away. */
+    private static int sink;
+
+    @Test
+    public void encodeRequest() {
+        final byte[] payload = payload(2741);
+        final LatensRegistrationCodec codec = new LatensRegistrationCodec("tadaam", "0123456789abcdef");
+        report("encodeRequest", new Operation() {
+            @Override
+            public int run() {
+                return encodeRequestWithGson("tadaam", "0123456789abcdef", payload).length();
+            }
+        }, new Operation() {
+            @Override
+            public int run() {
+                return codec.encodeRequest(payload).length;
+            }
+        });
+    }
+
+    @Test
+    public void decodeResponse() {
+        final byte[] response = bytes(responses()[0]);
+        report("decodeResponse", new Operation() {
+            @Override
+            public int run() {
+                return decodeResponseWithGson(response).length;
+            }
+        }, new Operation() {
+            @Override
+            public int run() throws IOException {
+                return LatensRegistrationCodec.decodeResponse(response).length;
+            }
+        });
+    }
+
+    private interface Operation {
+
+        int run() throws Exception;
+    }
+
+    private static void report(String name, Operation gson, Operation codec) {
+        long gsonNs = measure(gson);
+        long codecNs = measure(codec);
+        System.out.println(String.format("%s: gson %d ns/op, codec %d ns/op, %.1fx", name,
+                gsonNs, codecNs, (double) gsonNs / codecNs));
+    }
+
+    private static long measure(Operation operation) {
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                sink += operation.run();
+            }
+            long startNs = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                sink += operation.run();
+            }
+            return (System.nanoTime() - startNs) / MEASURED_ITERATIONS;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
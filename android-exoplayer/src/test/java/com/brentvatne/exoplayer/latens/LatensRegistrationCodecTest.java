@@ -0,0 +1,134 @@
+package com.brentvatne.exoplayer.latens;
+
+import android.util.Base64;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link LatensRegistrationCodec} against the Gson binding it replaced, byte for byte.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 28)
+public class LatensRegistrationCodecTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /* Sizes around the base64 padding ('=' escaped by Gson) and line length (57 bytes per line,
+     * line feeds escaped by Gson) boundaries, and of typical Widevine challenges. */
+    static final int[] PAYLOAD_SIZES = {0, 1, 2, 3, 56, 57, 58, 113, 114, 1024, 1700, 2741, 4096};
+
+    @Test
+    public void encodeRequestMatchesGson() {
+        String[][] registrations = {
+                {"tadaam", "0123456789abcdef"},
+                {"cust<&>'=\"", "portal\n\u00e9\u2028"},
+        };
+        for (String[] registration : registrations) {
+            LatensRegistrationCodec codec = new LatensRegistrationCodec(registration[0], registration[1]);
+            for (int size : PAYLOAD_SIZES) {
+                byte[] payload = payload(size);
+                assertEquals("payload of " + size + " bytes",
+                        encodeRequestWithGson(registration[0], registration[1], payload),
+                        new String(codec.encodeRequest(payload), US_ASCII));
+            }
+        }
+    }
+
+    @Test
+    public void encodeRequestReusesBufferAcrossSizes() {
+        LatensRegistrationCodec codec = new LatensRegistrationCodec("tadaam", "portal");
+        byte[] large = payload(16 * 1024);
+        byte[] small = payload(3);
+        codec.encodeRequest(large);
+        assertEquals(encodeRequestWithGson("tadaam", "portal", small),
+                new String(codec.encodeRequest(small), US_ASCII));
+    }
+
+    @Test
+    public void decodeResponseMatchesGson() throws IOException {
+        for (String response : responses()) {
+            assertArrayEquals(response, decodeResponseWithGson(bytes(response)),
+                    LatensRegistrationCodec.decodeResponse(bytes(response)));
+        }
+    }
+
+    @Test
+    public void decodeResponseWithoutLicenseFails() {
+        try {
+            LatensRegistrationCodec.decodeResponse(bytes("{\"error\":\"denied\"}"));
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Yelo license responses as the server formats them and variations a JSON parser must accept:
+     * other fields around the license, nested values, whitespace and escaped characters.
+     */
+    static String[] responses() {
+        String license = Base64.encodeToString(payload(1024), Base64.DEFAULT);
+        String escapedLicense = license.replace("=", "\\u003d").replace("\n", "\\n")
+                .replace("/", "\\/");
+        return new String[] {
+                "{\"license\":\"" + escapedLicense + "\"}",
+                "{\"license\":\"" + Base64.encodeToString(payload(2), Base64.NO_WRAP) + "\"}",
+                "{\"status\":\"ok\",\"meta\":{\"license\":\"nested\",\"ids\":[1,2,{}]},"
+                        + "\"license\":\"" + escapedLicense + "\",\"ttl\":3600}",
+                " {\n  \"license\" : \"" + escapedLicense + "\"\n}\n",
+        };
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * The request encoding of LatensMediaDrmCallback before LatensRegistrationCodec. The JSON is
+     * encoded as UTF-8, Android's default charset, regardless of the JVM running the test.
+     */
+    static String encodeRequestWithGson(String customerName, String portalId, byte[] payload) {
+        LatensRegistration latensRegistration = new LatensRegistration();
+        latensRegistration.customerName = customerName;
+        latensRegistration.accountName = "PlayReadyAccount";
+        latensRegistration.portalId = portalId;
+        latensRegistration.friendlyName = "tadaam";
+        latensRegistration.deviceInfo = new LatensDeviceInfo();
+        LatensRegistrationBody body = new LatensRegistrationBody();
+        body.latensRegistration = latensRegistration;
+        body.payload = new String(Base64.encode(payload, 0), US_ASCII);
+        Gson gson = new Gson();
+        String jsonBody = gson.toJson(body);
+        return Base64.encodeToString(jsonBody.getBytes(Charset.forName("UTF-8")), Base64.DEFAULT);
+    }
+
+    /**
+     * The response decoding of LatensMediaDrmCallback before LatensRegistrationCodec, with the
+     * same charset note.
+     */
+    static byte[] decodeResponseWithGson(byte[] keyResponse) {
+        Gson gson = new Gson();
+        String response = new String(keyResponse, Charset.forName("UTF-8"));
+        YeloLicenseResponse license = gson.fromJson(response, YeloLicenseResponse.class);
+        return Base64.decode(license.license, Base64.DEFAULT);
+    }
+}